@@ -0,0 +1,74 @@
+package encryption;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+import javax.imageio.ImageIO;
+
+/**
+ * The work the build runs with -XX:ArchiveClassesAtExit to make the AppCDS archive (target/encrypt.jsa) that is shipped next to encrypt.jar. Running each
+ * command line mode once on a small image loads the same classes they load when run for real, so that with -XX:SharedArchiveFile they are mapped in
+ * already parsed and verified rather than read out of the jar.
+ * <p>
+ * Everything is done in a temporary directory, including the dictionary cache, which is deleted afterwards.
+ */
+class AppCdsTraining
+	{
+		public static void main(String[] args) throws IOException
+			{
+				File directory = Files.createTempDirectory("appcds").toFile();
+				try
+					{
+						File image = new File(directory, "training image.png");
+						ImageIO.write(new BufferedImage(64, 64, BufferedImage.TYPE_INT_RGB), "png", image);
+
+						// The image to swap is in a directory of its own, and holds a message so that it is swapped to a name that can be saved
+						File batch = new File(directory, "batch");
+						batch.mkdir();
+						File hidden = new File(batch, "hidden.png");
+						File raw = new File(directory, "hidden.stgr");
+						String cache = new File(directory, "cache").getPath();
+
+						run("mode=stats", "cache=" + cache);
+						run("mode=embed", "cache=" + cache, "image=" + image, "format=bytes", "message=training", "out=" + hidden);
+						run("mode=extract", "cache=" + cache, "image=" + hidden, "format=bytes");
+						run("mode=embed", "cache=" + cache, "image=" + image, "message=training", "out=" + hidden);
+						run("mode=extract", "cache=" + cache, "image=" + hidden);
+						run("mode=toraw", "cache=" + cache, "image=" + hidden, "out=" + raw);
+						run("mode=topng", "cache=" + cache, "image=" + raw, "out=" + hidden);
+						run("mode=scan", "cache=" + cache, "input=" + batch, "threads=1");
+						run("mode=batch", "cache=" + cache, "input=" + batch, "output=" + new File(directory, "swapped"), "threads=1");
+					}
+				finally
+					{
+						try (Stream<Path> files = Files.walk(directory.toPath()))
+							{
+								files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+							}
+					}
+			}
+
+		/**
+		 * Runs {@link Encryption#main(String[])} with the given system properties, each of the form <i>name=value</i>, which are cleared again afterwards.
+		 */
+		private static void run(String... properties)
+			{
+				for (String property : properties)
+					System.setProperty(property.substring(0, property.indexOf('=')), property.substring(property.indexOf('=') + 1));
+
+				try
+					{
+						Encryption.main(new String[0]);
+					}
+				finally
+					{
+						for (String property : properties)
+							System.clearProperty(property.substring(0, property.indexOf('=')));
+					}
+			}
+	}
@@ -0,0 +1,155 @@
+package encryption;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Swaps the messages of many images without any user interaction, the same as SWAP_MESSAGES mode but for a whole directory (or list) of images at once.
+ * <p>
+ * The images are spread across a pool of threads. Every thread has its own {@link SwapCodec} but they all share the one {@link Dictionary}, which is only
+ * ever read.
+ */
+class Batch
+	{
+		/**
+		 * Swaps the message and file name of every image and prints the result of each as it completes, followed by the overall throughput.
+		 *
+		 * @param n
+		 *            - the {@link Network} used to read and write the messages
+		 * @param inputDirectory
+		 *            - every .jpg and .png file in this directory is swapped, may be null if a fileList is given
+		 * @param fileList
+		 *            - a text file naming one image per line, may be null if an inputDirectory is given
+		 * @param outputDirectory
+		 *            - where to save the swapped images, if null each image is overwritten and renamed in place
+		 * @param threads
+		 *            - the number of images to work on at once
+		 * @throws IOException
+		 *             - if the images to swap can not be listed
+		 * @throws InterruptedException
+		 *             - if interrupted while waiting for the images to be swapped
+		 */
+		static void swapMessages(Network n, File inputDirectory, File fileList, File outputDirectory, int threads) throws IOException, InterruptedException
+			{
+				List<File> images = new ArrayList<File>();
+
+				if (inputDirectory != null)
+					{
+						File[] files = inputDirectory.listFiles();
+						if (files == null)
+							throw new IOException("Not a directory: " + inputDirectory);
+
+						for (File file : files)
+							if (file.isFile() && (file.getName().toLowerCase().endsWith(".jpg") || file.getName().toLowerCase().endsWith(".png")))
+								images.add(file);
+					}
+
+				if (fileList != null)
+					for (String line : Files.readAllLines(fileList.toPath(), StandardCharsets.UTF_8))
+						if (line.trim().length() > 0)
+							images.add(new File(line.trim()));
+
+				if (outputDirectory != null && !outputDirectory.isDirectory() && !outputDirectory.mkdirs())
+					throw new IOException("Could not create the output directory: " + outputDirectory);
+
+				// Sweep the network once (or read it back from the last time it was swept), every thread then reads from the same dictionary
+				final Dictionary dictionary = DictionaryCache.get(n);
+				final ThreadLocal<SwapCodec> codecs = ThreadLocal.withInitial(() -> new SwapCodec(dictionary, new Random()));
+
+				ExecutorService workers = Executors.newFixedThreadPool(threads);
+				CompletionService<Result> results = new ExecutorCompletionService<Result>(workers);
+
+				long startTime = System.nanoTime();
+
+				for (final File image : images)
+					results.submit(() -> swap(codecs.get(), image, outputDirectory));
+				workers.shutdown();
+
+				int swapped = 0;
+				long bytes = 0;
+
+				// Report each image as it finishes, rather than in the order they were listed
+				for (int i = 0; i < images.size(); i++)
+					{
+						Result result;
+						try
+							{
+								result = results.take().get();
+							}
+						catch (ExecutionException e)
+							{
+								// swap() catches everything it can, so this is something like an OutOfMemoryError
+								throw new IllegalStateException(e.getCause());
+							}
+
+						System.out.println(result);
+
+						if (result.error == null)
+							{
+								swapped++;
+								bytes += result.bytes;
+							}
+					}
+
+				double seconds = (System.nanoTime() - startTime) / 1e9;
+				System.out.println(String.format("Swapped %d of %d images in %.2f s: %.2f images/s, %.2f MB/s (%d threads)", swapped, images.size(), seconds, swapped
+						/ seconds, bytes / seconds / (1024 * 1024), threads));
+			}
+
+		/**
+		 * Swaps a single image, catching any failure so that one bad image doesn't stop the rest of the batch.
+		 */
+		private static Result swap(SwapCodec codec, File image, File outputDirectory)
+			{
+				Result result = new Result(image);
+				long startTime = System.nanoTime();
+
+				try
+					{
+						result.bytes = image.length();
+						result.swappedImage = codec.swapInformation(image, outputDirectory);
+					}
+				catch (Exception e)
+					{
+						result.error = e;
+					}
+
+				result.nanos = System.nanoTime() - startTime;
+				return result;
+			}
+
+		/**
+		 * The outcome of swapping a single image.
+		 */
+		private static class Result
+			{
+				final File image;
+				File swappedImage;
+				Exception error;
+				long bytes, nanos;
+
+				private Result(File image)
+					{
+						this.image = image;
+					}
+
+				@Override
+				public String toString()
+					{
+						if (error == null)
+							return String.format("OK     %s -> %s (%d ms)", image, swappedImage.getName(), nanos / 1000000);
+						else
+							return String.format("FAILED %s (%s)", image, error);
+					}
+			}
+	}
@@ -0,0 +1,571 @@
+package encryption;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.PixelInterleavedSampleModel;
+import java.awt.image.Raster;
+import java.awt.image.SampleModel;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.nio.ByteBuffer;
+import java.util.SplittableRandom;
+import java.util.stream.IntStream;
+
+/**
+ * Reads and writes the bits that hold a message directly from the arrays backing an image, rather than through {@link BufferedImage#getRGB(int, int)} and
+ * {@link BufferedImage#setRGB(int, int, int)} which convert every pixel through the image's ColorModel.
+ * <p>
+ * The bit that holds the data is the least significant bit of a pixel's blue value, this is the bit that <code>getRGB() % 2</code> reads and that
+ * <code>setRGB(getRGB() + 1)</code> sets on a cleaned pixel. Images are split up into 4*4 squares of pixels, each of which holds the startingNodeStates for a
+ * single character, bit <i>x + (y * 4)</i> of a pattern being the pixel at <i>(x, y)</i> within the square.
+ */
+abstract class Carrier
+	{
+		/**
+		 * The image that is being read and written, this is not necessarily the image that was passed to {@link #of(BufferedImage)} if that image had to be
+		 * converted. Null if the {@link Carrier} was made from a {@link Raster} by {@link #of(Raster)}.
+		 */
+		final BufferedImage image;
+
+		/**
+		 * The number of 4*4 squares that fit across and down the image, the pixels to the right and bottom of these are never used.
+		 */
+		final int blocksWide, blocksHigh;
+
+		/**
+		 * The size of the image in pixels, and whether each pixel has an alpha value as well as RGB.
+		 */
+		final int width, height;
+		final boolean hasAlpha;
+
+		/**
+		 * The number of rows of 4*4 squares rewritten together by {@link #rewrite(char[], int, Dictionary, SplittableRandom, SplittableRandom)}, enough that
+		 * splitting an image up costs next to nothing.
+		 */
+		private static final int BAND_BLOCK_ROWS = 16;
+
+		private Carrier(BufferedImage image, Raster raster)
+			{
+				this(image, raster.getWidth(), raster.getHeight(), raster.getNumBands() >= 4);
+			}
+
+		private Carrier(BufferedImage image, int width, int height, boolean hasAlpha)
+			{
+				this.image = image;
+				this.width = width;
+				this.height = height;
+				this.hasAlpha = hasAlpha;
+				blocksWide = width / 4;
+				blocksHigh = height / 4;
+			}
+
+		/**
+		 * Picks the fastest way to access the pixels of an image. Images whose pixels are not stored as 8 bit RGB values are converted to
+		 * {@link BufferedImage#TYPE_INT_ARGB} (or {@link BufferedImage#TYPE_INT_RGB} if they have no alpha) first.
+		 *
+		 * @param img
+		 *            - the image to read or write a message in
+		 * @return - a {@link Carrier} for the image, or for a converted copy of it
+		 */
+		static Carrier of(BufferedImage img)
+			{
+				switch (img.getType())
+					{
+						case BufferedImage.TYPE_INT_RGB:
+						case BufferedImage.TYPE_INT_ARGB:
+							return new IntCarrier(img, img.getRaster());
+						case BufferedImage.TYPE_3BYTE_BGR:
+						case BufferedImage.TYPE_4BYTE_ABGR:
+							return new ByteCarrier(img, img.getRaster());
+						default:
+							BufferedImage converted = convert(img);
+							return new IntCarrier(converted, converted.getRaster());
+					}
+			}
+
+		/**
+		 * Works directly on the pixels of a {@link Raster}, band 2 being the blue band as it is in the rasters of RGB images.
+		 *
+		 * @param raster
+		 *            - the pixels to read or write a message in, either packed into ints with the blue value in the lowest 8 bits or stored in a byte for
+		 *            each band
+		 * @return - a {@link Carrier} for the raster
+		 * @throws IllegalArgumentException
+		 *             - if the raster stores its pixels in any other way
+		 */
+		static Carrier of(Raster raster)
+			{
+				SampleModel sampleModel = raster.getSampleModel();
+
+				if (sampleModel.getNumBands() >= 3 && raster.getDataBuffer() instanceof DataBufferInt && sampleModel instanceof SinglePixelPackedSampleModel
+						&& ((SinglePixelPackedSampleModel) sampleModel).getBitMasks()[2] == 0xFF)
+					return new IntCarrier(null, raster);
+
+				if (sampleModel.getNumBands() >= 3 && raster.getDataBuffer() instanceof DataBufferByte && sampleModel instanceof PixelInterleavedSampleModel)
+					return new ByteCarrier(null, raster);
+
+				throw new IllegalArgumentException("Can only hide messages in 8 bit RGB pixels, not " + sampleModel);
+			}
+
+		/**
+		 * Works directly on the pixels of a {@link RawImage}, so that reading and writing a message only touches the pages of the file that hold it.
+		 *
+		 * @param raw
+		 *            - the pixels to read or write a message in, which is never changed if it was opened read only
+		 * @return - a {@link Carrier} for the raw image, whose {@link #image} is null
+		 */
+		static Carrier of(RawImage raw)
+			{
+				return new MappedCarrier(raw);
+			}
+
+		/**
+		 * @param blockX
+		 *            - not the absolute x pixel position but the index of the 4*4 square
+		 * @param blockY
+		 *            - not the absolute y pixel position but the index of the 4*4 square
+		 * @return - the startingNodeStates held by the square as a 16 bit number
+		 */
+		abstract int readBlock(int blockX, int blockY);
+
+		/**
+		 * Sets the bits of a 4*4 square, it is assumed that the image has been cleaned first so that only the bits that need to be set are touched.
+		 *
+		 * @param blockX
+		 *            - not the absolute x pixel position but the index of the 4*4 square
+		 * @param blockY
+		 *            - not the absolute y pixel position but the index of the 4*4 square
+		 * @param pattern
+		 *            - the startingNodeStates to store in the square as a 16 bit number
+		 */
+		abstract void writeBlock(int blockX, int blockY, int pattern);
+
+		/**
+		 * Clears the bit of every pixel that could ever be part of a message.
+		 */
+		abstract void clean();
+
+		/**
+		 * Overwrites the bit of every pixel that could ever be part of a message in a single pass, with a message followed by random data in every square
+		 * after it. This does the work of {@link #clean()}, {@link #writeBlock(int, int, int)} and filling the rest of the image while only going over each
+		 * pixel once.
+		 * <p>
+		 * The rows of squares are split into bands that are rewritten in parallel, each with two streams of random numbers of its own, one split off from
+		 * patterns and the other from fill. Each band picks the startingNodeStates of the characters that fall within it from its patterns stream, so a long
+		 * message is encoded on every core rather than one character after another, and fills the squares after the message with the bits of its fill
+		 * stream, 4 squares at a time. The streams are split off in order before any band is rewritten, so the same two streams give the same image whichever
+		 * order the bands are rewritten in and however many threads rewrite them.
+		 *
+		 * @param letters
+		 *            - the characters of the message, moving along each row of 4*4 squares in turn
+		 * @param first
+		 *            - the index within letters of the first square of this {@link Carrier}, which is more than 0 for a band of rows taken from further down
+		 *            an image
+		 * @param dictionary
+		 *            - used to pick the startingNodeStates for each character
+		 * @param patterns
+		 *            - the stream that each band's stream for picking startingNodeStates is split off from, which is left split as many times as there are
+		 *            bands
+		 * @param fill
+		 *            - the stream that each band's stream of random data is split off from, in the same way. It should never be seeded the same way twice,
+		 *            or every image filled from it would end in the same noise.
+		 * @return - the number of squares filled with random data
+		 */
+		int rewrite(final char[] letters, final int first, final Dictionary dictionary, SplittableRandom patterns, SplittableRandom fill)
+			{
+				int blocks = blocksWide * blocksHigh;
+				int written = Math.max(0, Math.min(blocks, letters.length - first));
+
+				// So that a character the network can't produce fails before any pixel is touched, rather than leaving the image half rewritten
+				dictionary.checkLetters(letters, first, first + written);
+
+				int bands = (blocksHigh + BAND_BLOCK_ROWS - 1) / BAND_BLOCK_ROWS;
+
+				// Split in order up front, the order the bands are then rewritten in doesn't matter
+				final SplittableRandom[] patternRandoms = new SplittableRandom[bands], fillRandoms = new SplittableRandom[bands];
+				for (int band = 0; band < bands; band++)
+					{
+						patternRandoms[band] = patterns.split();
+						fillRandoms[band] = fill.split();
+					}
+
+				IntStream.range(0, bands).parallel().forEach(band ->
+					{
+						SplittableRandom patternRandom = patternRandoms[band], fillRandom = fillRandoms[band];
+						int[] row = new int[blocksWide];
+						long bits = 0;
+						int left = 0;
+
+						for (int blockY = band * BAND_BLOCK_ROWS; blockY < Math.min(blocksHigh, (band + 1) * BAND_BLOCK_ROWS); blockY++)
+							{
+								int index = first + (blockY * blocksWide);
+								for (int blockX = 0; blockX < blocksWide; blockX++, index++)
+									if (index < letters.length)
+										row[blockX] = dictionary.getPattern(letters[index], patternRandom);
+									else
+										{
+											if (left == 0)
+												{
+													bits = fillRandom.nextLong();
+													left = 4;
+												}
+											row[blockX] = (int) bits & 0xFFFF;
+											bits >>>= 16;
+											left--;
+										}
+
+								writeBlockRow(blockY, row);
+							}
+					});
+
+				return blocks - written;
+			}
+
+		/**
+		 * Sets the bits of every 4*4 square in a row, whatever they held before.
+		 *
+		 * @param blockY
+		 *            - not the absolute y pixel position but the index of the row of 4*4 squares
+		 * @param patterns
+		 *            - the startingNodeStates to store in each square of the row as a 16 bit number
+		 */
+		abstract void writeBlockRow(int blockY, int[] patterns);
+
+		/**
+		 * Reads the least significant bit of each of a pixel's values, for {@link Payload}s which use every value rather than just the blue one.
+		 *
+		 * @return - bit 0 is the red value's bit, then green, blue and alpha
+		 */
+		abstract int readChannelBits(int x, int y);
+
+		/**
+		 * Replaces the least significant bits of the first few of a pixel's values, the image doesn't need to have been cleaned first.
+		 *
+		 * @param bits
+		 *            - bit 0 is the red value's bit, then green, blue and alpha
+		 * @param channels
+		 *            - the number of values to set, 3 for RGB or 4 for RGB and alpha
+		 */
+		abstract void writeChannelBits(int x, int y, int bits, int channels);
+
+		/**
+		 * Copies an image into one that a {@link Carrier} can work with, using getRGB() so that no information is lost for any image that getRGB() could
+		 * already read accurately.
+		 */
+		private static BufferedImage convert(BufferedImage img)
+			{
+				BufferedImage converted = new BufferedImage(img.getWidth(), img.getHeight(), img.getColorModel().hasAlpha() ? BufferedImage.TYPE_INT_ARGB
+						: BufferedImage.TYPE_INT_RGB);
+
+				// One row at a time to avoid needing a second copy of the whole image
+				int[] row = new int[img.getWidth()];
+				for (int y = 0; y < img.getHeight(); y++)
+					{
+						img.getRGB(0, y, row.length, 1, row, 0, row.length);
+						converted.setRGB(0, y, row.length, 1, row, 0, row.length);
+					}
+
+				return converted;
+			}
+
+		/**
+		 * For images that pack each pixel into a single int, the blue value is stored in the lowest 8 bits.
+		 */
+		private static class IntCarrier extends Carrier
+			{
+				private final int[] data;
+				private final int offset, scanlineStride;
+
+				/**
+				 * Where the lowest bit of each band is in a pixel, red, green, blue and alpha.
+				 */
+				private final int[] bitOffsets;
+
+				private IntCarrier(BufferedImage image, Raster raster)
+					{
+						super(image, raster);
+
+						SinglePixelPackedSampleModel sampleModel = (SinglePixelPackedSampleModel) raster.getSampleModel();
+						DataBufferInt dataBuffer = (DataBufferInt) raster.getDataBuffer();
+
+						data = dataBuffer.getData();
+						offset = dataBuffer.getOffset() + sampleModel.getOffset(-raster.getSampleModelTranslateX(), -raster.getSampleModelTranslateY());
+						scanlineStride = sampleModel.getScanlineStride();
+						bitOffsets = sampleModel.getBitOffsets();
+					}
+
+				@Override
+				int readBlock(int blockX, int blockY)
+					{
+						int pattern = 0;
+						int row = offset + (blockY * 4 * scanlineStride) + (blockX * 4);
+
+						for (int y = 0; y < 4; y++, row += scanlineStride)
+							for (int x = 0; x < 4; x++)
+								pattern |= (data[row + x] & 1) << (x + (y * 4));
+
+						return pattern;
+					}
+
+				@Override
+				void writeBlock(int blockX, int blockY, int pattern)
+					{
+						int row = offset + (blockY * 4 * scanlineStride) + (blockX * 4);
+
+						for (int y = 0; y < 4; y++, row += scanlineStride)
+							for (int x = 0; x < 4; x++)
+								data[row + x] |= (pattern >>> (x + (y * 4))) & 1;
+					}
+
+				@Override
+				void writeBlockRow(int blockY, int[] patterns)
+					{
+						int row = offset + (blockY * 4 * scanlineStride);
+
+						// A row of pixels at a time, so the pixels are gone over in the order they are stored
+						for (int y = 0; y < 4; y++, row += scanlineStride)
+							for (int blockX = 0, i = row; blockX < blocksWide; blockX++)
+								{
+									int bits = patterns[blockX] >>> (y * 4);
+									for (int x = 0; x < 4; x++, i++)
+										data[i] = (data[i] & ~1) | ((bits >>> x) & 1);
+								}
+					}
+
+				@Override
+				void clean()
+					{
+						int width = blocksWide * 4;
+						int row = offset;
+
+						for (int y = 0; y < blocksHigh * 4; y++, row += scanlineStride)
+							for (int x = row; x < row + width; x++)
+								data[x] &= ~1;
+					}
+
+				@Override
+				int readChannelBits(int x, int y)
+					{
+						int pixel = data[offset + (y * scanlineStride) + x];
+						int bits = 0;
+						for (int band = 0; band < bitOffsets.length; band++)
+							bits |= ((pixel >>> bitOffsets[band]) & 1) << band;
+
+						return bits;
+					}
+
+				@Override
+				void writeChannelBits(int x, int y, int bits, int channels)
+					{
+						int i = offset + (y * scanlineStride) + x;
+						int pixel = data[i];
+						for (int band = 0; band < channels; band++)
+							pixel = (pixel & ~(1 << bitOffsets[band])) | (((bits >>> band) & 1) << bitOffsets[band]);
+
+						data[i] = pixel;
+					}
+			}
+
+		/**
+		 * For images that store each of a pixel's values in its own byte, the blue value being the third band.
+		 */
+		private static class ByteCarrier extends Carrier
+			{
+				private static final int BLUE = 2;
+
+				private final byte[] data;
+				private final int offset, pixelStride, scanlineStride;
+
+				/**
+				 * Where the first pixel starts, and where each band is within a pixel, red, green, blue and alpha.
+				 */
+				private final int pixelOffset;
+				private final int[] bandOffsets;
+
+				private ByteCarrier(BufferedImage image, Raster raster)
+					{
+						super(image, raster);
+
+						ComponentSampleModel sampleModel = (ComponentSampleModel) raster.getSampleModel();
+						DataBufferByte dataBuffer = (DataBufferByte) raster.getDataBuffer();
+
+						data = dataBuffer.getData();
+						offset = dataBuffer.getOffset() + sampleModel.getOffset(-raster.getSampleModelTranslateX(), -raster.getSampleModelTranslateY(), BLUE);
+						pixelStride = sampleModel.getPixelStride();
+						scanlineStride = sampleModel.getScanlineStride();
+						pixelOffset = dataBuffer.getOffset() - (raster.getSampleModelTranslateY() * scanlineStride) - (raster.getSampleModelTranslateX() * pixelStride);
+						bandOffsets = sampleModel.getBandOffsets();
+					}
+
+				@Override
+				int readBlock(int blockX, int blockY)
+					{
+						int pattern = 0;
+						int row = offset + (blockY * 4 * scanlineStride) + (blockX * 4 * pixelStride);
+
+						for (int y = 0; y < 4; y++, row += scanlineStride)
+							for (int x = 0, i = row; x < 4; x++, i += pixelStride)
+								pattern |= (data[i] & 1) << (x + (y * 4));
+
+						return pattern;
+					}
+
+				@Override
+				void writeBlock(int blockX, int blockY, int pattern)
+					{
+						int row = offset + (blockY * 4 * scanlineStride) + (blockX * 4 * pixelStride);
+
+						for (int y = 0; y < 4; y++, row += scanlineStride)
+							for (int x = 0, i = row; x < 4; x++, i += pixelStride)
+								data[i] |= (pattern >>> (x + (y * 4))) & 1;
+					}
+
+				@Override
+				void writeBlockRow(int blockY, int[] patterns)
+					{
+						int row = offset + (blockY * 4 * scanlineStride);
+
+						// A row of pixels at a time, so the pixels are gone over in the order they are stored
+						for (int y = 0; y < 4; y++, row += scanlineStride)
+							for (int blockX = 0, i = row; blockX < blocksWide; blockX++)
+								{
+									int bits = patterns[blockX] >>> (y * 4);
+									for (int x = 0; x < 4; x++, i += pixelStride)
+										data[i] = (byte) ((data[i] & ~1) | ((bits >>> x) & 1));
+								}
+					}
+
+				@Override
+				void clean()
+					{
+						int width = blocksWide * 4 * pixelStride;
+						int row = offset;
+
+						for (int y = 0; y < blocksHigh * 4; y++, row += scanlineStride)
+							for (int i = row; i < row + width; i += pixelStride)
+								data[i] &= ~1;
+					}
+
+				@Override
+				int readChannelBits(int x, int y)
+					{
+						int pixel = pixelOffset + (y * scanlineStride) + (x * pixelStride);
+						int bits = 0;
+						for (int band = 0; band < bandOffsets.length; band++)
+							bits |= (data[pixel + bandOffsets[band]] & 1) << band;
+
+						return bits;
+					}
+
+				@Override
+				void writeChannelBits(int x, int y, int bits, int channels)
+					{
+						int pixel = pixelOffset + (y * scanlineStride) + (x * pixelStride);
+						for (int band = 0; band < channels; band++)
+							{
+								int i = pixel + bandOffsets[band];
+								data[i] = (byte) ((data[i] & ~1) | ((bits >>> band) & 1));
+							}
+					}
+			}
+	
+		/**
+		 * For {@link RawImage}s, which store each of a pixel's values in its own byte in the order red, green, blue (and alpha) across a number of memory
+		 * mapped buffers. Every 4*4 square is within a single buffer, and each buffer is only ever read and written at absolute positions so that bands of
+		 * it can be rewritten in parallel.
+		 */
+		private static class MappedCarrier extends Carrier
+			{
+				private static final int BLUE = 2;
+
+				private final ByteBuffer[] segments;
+				private final int segmentRows, pixelStride, scanlineStride;
+
+				private MappedCarrier(RawImage raw)
+					{
+						super(null, raw.width, raw.height, raw.channels == 4);
+
+						segments = raw.segments;
+						segmentRows = raw.segmentRows;
+						pixelStride = raw.channels;
+						scanlineStride = raw.width * raw.channels;
+					}
+
+				@Override
+				int readBlock(int blockX, int blockY)
+					{
+						ByteBuffer data = segments[(blockY * 4) / segmentRows];
+						int pattern = 0;
+						int row = (((blockY * 4) % segmentRows) * scanlineStride) + (blockX * 4 * pixelStride) + BLUE;
+
+						for (int y = 0; y < 4; y++, row += scanlineStride)
+							for (int x = 0, i = row; x < 4; x++, i += pixelStride)
+								pattern |= (data.get(i) & 1) << (x + (y * 4));
+
+						return pattern;
+					}
+
+				@Override
+				void writeBlock(int blockX, int blockY, int pattern)
+					{
+						ByteBuffer data = segments[(blockY * 4) / segmentRows];
+						int row = (((blockY * 4) % segmentRows) * scanlineStride) + (blockX * 4 * pixelStride) + BLUE;
+
+						for (int y = 0; y < 4; y++, row += scanlineStride)
+							for (int x = 0, i = row; x < 4; x++, i += pixelStride)
+								data.put(i, (byte) (data.get(i) | ((pattern >>> (x + (y * 4))) & 1)));
+					}
+
+				@Override
+				void writeBlockRow(int blockY, int[] patterns)
+					{
+						ByteBuffer data = segments[(blockY * 4) / segmentRows];
+						int row = (((blockY * 4) % segmentRows) * scanlineStride) + BLUE;
+
+						// A row of pixels at a time, so the pages of the file are gone over in order
+						for (int y = 0; y < 4; y++, row += scanlineStride)
+							for (int blockX = 0, i = row; blockX < blocksWide; blockX++)
+								{
+									int bits = patterns[blockX] >>> (y * 4);
+									for (int x = 0; x < 4; x++, i += pixelStride)
+										data.put(i, (byte) ((data.get(i) & ~1) | ((bits >>> x) & 1)));
+								}
+					}
+
+				@Override
+				void clean()
+					{
+						int width = blocksWide * 4 * pixelStride;
+
+						for (int y = 0; y < blocksHigh * 4; y++)
+							{
+								ByteBuffer data = segments[y / segmentRows];
+								int row = ((y % segmentRows) * scanlineStride) + BLUE;
+								for (int i = row; i < row + width; i += pixelStride)
+									data.put(i, (byte) (data.get(i) & ~1));
+							}
+					}
+
+				@Override
+				int readChannelBits(int x, int y)
+					{
+						ByteBuffer data = segments[y / segmentRows];
+						int pixel = ((y % segmentRows) * scanlineStride) + (x * pixelStride);
+						int bits = 0;
+						for (int band = 0; band < pixelStride; band++)
+							bits |= (data.get(pixel + band) & 1) << band;
+
+						return bits;
+					}
+
+				@Override
+				void writeChannelBits(int x, int y, int bits, int channels)
+					{
+						ByteBuffer data = segments[y / segmentRows];
+						int pixel = ((y % segmentRows) * scanlineStride) + (x * pixelStride);
+						for (int band = 0; band < channels; band++)
+							data.put(pixel + band, (byte) ((data.get(pixel + band) & ~1) | ((bits >>> band) & 1)));
+					}
+			}
+	}
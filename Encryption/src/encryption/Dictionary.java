@@ -0,0 +1,157 @@
+package encryption;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.util.Arrays;
+import java.util.random.RandomGenerator;
+
+/**
+ * Every one of the 2^16 startingNodeStates is passed through a {@link Network} once and filed under the character it produces. Encoding a character is
+ * then a case of picking one of its startingNodeStates at random instead of randomising them until they happen to produce it, and as every valid
+ * startingNodeStates is equally likely to be picked the spread of the encoded data is unchanged.
+ * <p>
+ * Decoding works the other way around, the character for every startingNodeStates is kept so reading a 4*4 square is a single look up.
+ */
+class Dictionary
+	{
+		/**
+		 * get(<i>startingNodeStates as a 16 bit number</i>) == the index of the character that the startingNodeStates produce
+		 */
+		final ByteBuffer letters;
+
+		/**
+		 * Every startingNodeStates, grouped by the character it produces. The startingNodeStates that produce the character with index <i>i</i> are from
+		 * offsets[<i>i</i>] up to (but not including) offsets[<i>i</i> + 1].
+		 * <p>
+		 * Each set of startingNodeStates is stored as a 16 bit number, bit <i>i</i> being the state of node <i>i</i> in the first level of the network.
+		 */
+		final CharBuffer patterns;
+		final int[] offsets;
+
+		/**
+		 * Builds the {@link Dictionary} for a {@link Network}, see {@link DictionaryCache#get(Network)} to avoid doing so more than once.
+		 * 
+		 * @param n
+		 *            - the network to look up characters in
+		 */
+		Dictionary(Network n)
+			{
+				// The character produced by each set of startingNodeStates
+				byte[] letters = new byte[1 << Network.STARTING_NODES];
+				n.getCharacterIndices(0, letters.length, letters);
+
+				// The number of times each character is produced gives where each character's patterns start
+				offsets = new int[Network.NODES_PER_LEVEL + 1];
+				for (byte letter : letters)
+					offsets[letter + 1]++;
+				for (int i = 1; i < offsets.length; i++)
+					offsets[i] += offsets[i - 1];
+
+				// Use a copy of the offsets as the next free index in each character's list of patterns
+				int[] next = Arrays.copyOf(offsets, offsets.length);
+				char[] patterns = new char[letters.length];
+				for (int pattern = 0; pattern < letters.length; pattern++)
+					patterns[next[letters[pattern]]++] = (char) pattern;
+
+				this.letters = ByteBuffer.wrap(letters);
+				this.patterns = CharBuffer.wrap(patterns);
+			}
+
+		/**
+		 * A {@link Dictionary} that has already been built, such as one read back from a file by {@link DictionaryCache}.
+		 */
+		Dictionary(ByteBuffer letters, int[] offsets, CharBuffer patterns)
+			{
+				this.letters = letters;
+				this.offsets = offsets;
+				this.patterns = patterns;
+			}
+
+		/**
+		 * Picks one of the startingNodeStates that produce the desired character at random.
+		 * 
+		 * @param c
+		 *            - a non-capital alphabet character, a space or the terminating character '{'
+		 * @param r
+		 *            - used to choose between all of the possible startingNodeStates, any generator will do as the choice only has to look random
+		 * @return - a 16 bit number, bit <i>i</i> being the state of node <i>i</i> in the first level of the network.
+		 */
+		int getPattern(char c, RandomGenerator r)
+			{
+				int characterIndex = getCharacterIndex(c);
+				int possiblePatterns = offsets[characterIndex + 1] - offsets[characterIndex];
+
+				if (possiblePatterns == 0)
+					throw new IllegalArgumentException("The network can never produce '" + c + "', try a different seed");
+
+				return patterns.get(offsets[characterIndex] + r.nextInt(possiblePatterns));
+			}
+
+		/**
+		 * Checks that there is a pattern for every character of part of a message, before any of them are written.
+		 *
+		 * @param letters
+		 *            - non-capital alphabet characters, spaces or the terminating character '{'
+		 * @param from
+		 *            - the first character to check
+		 * @param to
+		 *            - the character after the last one to check
+		 * @throws IllegalArgumentException
+		 *             - if the network can never produce one of the characters
+		 */
+		void checkLetters(char[] letters, int from, int to)
+			{
+				boolean[] checked = new boolean[Network.NODES_PER_LEVEL];
+				for (int i = from; i < to; i++)
+					{
+						int characterIndex = getCharacterIndex(letters[i]);
+						if (!checked[characterIndex] && offsets[characterIndex + 1] == offsets[characterIndex])
+							throw new IllegalArgumentException("The network can never produce '" + letters[i] + "', try a different seed");
+						checked[characterIndex] = true;
+					}
+			}
+
+		/**
+		 * The equivalent of {@link Network#getLetter(int)} without having to run the network.
+		 *
+		 * @param pattern
+		 *            - a 16 bit number, bit <i>i</i> being the state of node <i>i</i> in the first level of the network.
+		 * @return - an non-capital alphabet character, a space or "{" which is the termination character.
+		 */
+		char getLetter(int pattern)
+			{
+				int characterIndex = letters.get(pattern);
+
+				if (characterIndex == Network.NODES_PER_LEVEL - 1)
+					return ' ';
+				else
+					return (char) (characterIndex + 97);
+			}
+
+		/**
+		 * The same as {@link Network#getCharFrequencies()} without having to run the network.
+		 *
+		 * @return - int[<i>The number of the node in the final level that represents a character</i>] == the number of startingNodeStates that produce it
+		 */
+		int[] getCharFrequencies()
+			{
+				int[] charFrequency = new int[Network.NODES_PER_LEVEL];
+				for (int i = 0; i < charFrequency.length; i++)
+					charFrequency[i] = offsets[i + 1] - offsets[i];
+
+				return charFrequency;
+			}
+
+		/**
+		 * @param c
+		 *            - a non-capital alphabet character, a space or the terminating character '{'
+		 * @return - the number of the node in the final level of the network that represents the character
+		 */
+		static int getCharacterIndex(char c)
+			{
+				if (c == ' ')
+					return Network.NODES_PER_LEVEL - 1;
+				else
+					return c - 97;
+			}
+	}
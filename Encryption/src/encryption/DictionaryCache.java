@@ -0,0 +1,195 @@
+package encryption;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Keeps the {@link Dictionary} of every {@link Network} that has been used, so that each one is only ever built once.
+ * <p>
+ * Dictionaries are saved to files in {@link #DIRECTORY}, one for each seed, leeway and number of levels, and read back with {@link FileChannel#map} so the
+ * tables are never copied into the heap and every JVM on the computer that uses the same {@link Network} shares the same pages of memory. The most recently
+ * used dictionaries are also kept in memory, so a program that switches between a few networks doesn't even need to map the file again.
+ * <p>
+ * Each file starts with a header:
+ * <ul>
+ * <li>int - {@link #MAGIC}</li>
+ * <li>int - {@link #VERSION}</li>
+ * <li>int - the seed</li>
+ * <li>int - the leeway, as {@link Float#floatToIntBits(float)}</li>
+ * <li>int - the number of levels</li>
+ * <li>int - the CRC32 of everything after the header</li>
+ * </ul>
+ * followed by {@link Dictionary#letters}, {@link Dictionary#offsets} and {@link Dictionary#patterns} in that order. A file whose header doesn't match, or
+ * whose checksum is wrong, is rebuilt.
+ */
+class DictionaryCache
+	{
+		private static final int MAGIC = 0x53544744; // "STGD"
+		private static final int VERSION = 1;
+		private static final int HEADER_SIZE = 6 * 4;
+
+		private static final int LETTERS_SIZE = 1 << Network.STARTING_NODES;
+		private static final int OFFSETS_SIZE = (Network.NODES_PER_LEVEL + 1) * 4;
+		private static final int PATTERNS_SIZE = (1 << Network.STARTING_NODES) * 2;
+		private static final int FILE_SIZE = HEADER_SIZE + LETTERS_SIZE + OFFSETS_SIZE + PATTERNS_SIZE;
+
+		/**
+		 * Where the command line modes save their dictionaries (set with -Dcache=<i>a directory</i>), or null to build every dictionary in memory
+		 * (-Dcache=none). A {@link StegoCodec} is given its own directory, if any.
+		 */
+		static volatile File DIRECTORY = new File(System.getProperty("user.home"), ".encryption");
+
+		/**
+		 * The number of dictionaries kept in memory (set with -Dcachesize=<i>an integer</i>).
+		 */
+		static int CAPACITY = 8;
+
+		/**
+		 * The most recently used dictionaries, the least recently used is dropped once there are more than {@link #CAPACITY}.
+		 */
+		private static final Map<String, Dictionary> RECENT = new LinkedHashMap<String, Dictionary>(16, 0.75f, true);
+
+		private DictionaryCache()
+			{
+			}
+
+		/**
+		 * Gets the {@link Dictionary} for a {@link Network}, from memory or from its file if it has been built before, building it (and saving it) otherwise.
+		 *
+		 * @param n
+		 *            - the network to get the dictionary of
+		 * @return - the dictionary, which may be shared with other threads
+		 */
+		static Dictionary get(Network n)
+			{
+				return get(n, DIRECTORY);
+			}
+
+		/**
+		 * The same as {@link #get(Network)} but saves the dictionary in a directory of its own rather than {@link #DIRECTORY}.
+		 *
+		 * @param directory
+		 *            - where the dictionary is saved, or null to build it in memory if it isn't already there
+		 */
+		static synchronized Dictionary get(Network n, File directory)
+			{
+				String key = n.seed + "_" + Integer.toHexString(Float.floatToIntBits(n.leeway)) + "_" + n.levels;
+
+				Dictionary dictionary = RECENT.get(key);
+				if (dictionary != null)
+					return dictionary;
+
+				File file = directory == null ? null : new File(directory, "dictionary_" + key + ".bin");
+
+				if (file != null && file.isFile())
+					try
+						{
+							dictionary = load(file, n);
+						}
+					catch (IOException e)
+						{
+							System.err.println("Could not read the saved dictionary " + file + " (" + e + ")");
+						}
+
+				if (dictionary == null)
+					{
+						dictionary = new Dictionary(n);
+
+						if (file != null)
+							try
+								{
+									save(file, n, dictionary);
+								}
+							catch (IOException e)
+								{
+									System.err.println("Could not save the dictionary to " + file + " (" + e + ")");
+								}
+					}
+
+				RECENT.put(key, dictionary);
+
+				// As many as it takes, CAPACITY may have been lowered since the last dictionary was kept
+				for (Iterator<String> eldest = RECENT.keySet().iterator(); RECENT.size() > CAPACITY; )
+					{
+						eldest.next();
+						eldest.remove();
+					}
+				return dictionary;
+			}
+
+		/**
+		 * @return - the dictionary saved in the file, or null if the file is for a different {@link Network}, a different version or is corrupt
+		 */
+		private static Dictionary load(File file, Network n) throws IOException
+			{
+				MappedByteBuffer buffer;
+				try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ))
+					{
+						if (channel.size() != FILE_SIZE)
+							return null;
+
+						// The mapping stays valid after the channel is closed
+						buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, FILE_SIZE);
+					}
+
+				if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION || buffer.getInt(8) != n.seed || buffer.getInt(12) != Float.floatToIntBits(n.leeway)
+						|| buffer.getInt(16) != n.levels)
+					return null;
+
+				ByteBuffer body = buffer.slice(HEADER_SIZE, FILE_SIZE - HEADER_SIZE);
+				CRC32 crc = new CRC32();
+				crc.update(body);
+				if ((int) crc.getValue() != buffer.getInt(20))
+					return null;
+
+				ByteBuffer letters = buffer.slice(HEADER_SIZE, LETTERS_SIZE);
+
+				int[] offsets = new int[Network.NODES_PER_LEVEL + 1];
+				buffer.slice(HEADER_SIZE + LETTERS_SIZE, OFFSETS_SIZE).asIntBuffer().get(offsets);
+
+				CharBuffer patterns = buffer.slice(HEADER_SIZE + LETTERS_SIZE + OFFSETS_SIZE, PATTERNS_SIZE).asCharBuffer();
+
+				return new Dictionary(letters, offsets, patterns);
+			}
+
+		/**
+		 * Saves a dictionary to a temporary file first and then moves it into place, so another JVM never sees a half written file.
+		 */
+		private static void save(File file, Network n, Dictionary dictionary) throws IOException
+			{
+				ByteBuffer buffer = ByteBuffer.allocate(FILE_SIZE);
+				buffer.putInt(MAGIC).putInt(VERSION).putInt(n.seed).putInt(Float.floatToIntBits(n.leeway)).putInt(n.levels).putInt(0);
+
+				buffer.put(dictionary.letters.duplicate().clear());
+				for (int offset : dictionary.offsets)
+					buffer.putInt(offset);
+				buffer.asCharBuffer().put(dictionary.patterns.duplicate().clear());
+
+				CRC32 crc = new CRC32();
+				crc.update(buffer.array(), HEADER_SIZE, FILE_SIZE - HEADER_SIZE);
+				buffer.putInt(20, (int) crc.getValue());
+
+				Files.createDirectories(file.getParentFile().toPath());
+				File temporary = File.createTempFile("dictionary", ".tmp", file.getParentFile());
+				try
+					{
+						Files.write(temporary.toPath(), buffer.array());
+						Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+					}
+				finally
+					{
+						temporary.delete();
+					}
+			}
+	}
@@ -3,15 +3,32 @@ package encryption;
 import java.awt.Color;
 import java.awt.Graphics;
 import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
 import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.imageio.ImageIO;
-import javax.swing.JFileChooser;
-import javax.swing.JOptionPane;
-import javax.swing.filechooser.FileNameExtensionFilter;
 
 /**
  * This class allows the user to select a .jpg or .png image file, it will take the image filename and encode it as a message while renaming the image to
@@ -31,11 +48,6 @@ import javax.swing.filechooser.FileNameExtensionFilter;
  */
 public class Encryption
 	{
-		/**
-		 * This is the file representing the image that is currently being worked with.
-		 */
-		private static File imageFile;
-
 		/**
 		 * This is initialised to the directory that the program is run from during the initialisation of the program.
 		 */
@@ -54,15 +66,33 @@ public class Encryption
 		 */
 		public static void main(String[] args)
 			{
+				final String mode = System.getProperty("mode", "SWAP_MESSAGES");
+
+				// Only SWAP_MESSAGES mode has any dialogs, every other mode runs the same with or without a display
+				if (!mode.equals("SWAP_MESSAGES"))
+					System.setProperty("java.awt.headless", "true");
+
 				Path currentRelativePath = Paths.get("");
 				currentDirectory = new File(currentRelativePath.toAbsolutePath().toString());
 
 				// Default seed chosen for extremely low standard deviation making message detection harder due to uniform spread of data
 				final int seed = Integer.parseInt(System.getProperty("seed", "1198662804"));
-				final String mode = System.getProperty("mode", "SWAP_MESSAGES");
 
 				Network.LEEWAY = Float.parseFloat(System.getProperty("leeway", "0.07"));
 				Network.LEVELS = Integer.parseInt(System.getProperty("levels", "3"));
+				SwapCodec.BAND_MEMORY = Long.parseLong(System.getProperty("bandmemory", "64")) * 1024 * 1024;
+				SwapCodec.COMPRESS = Boolean.getBoolean("compress");
+				SwapCodec.HEADER = System.getProperty("layout", "terminated").equals("header");
+				PngBandWriter.LEVEL = Integer.parseInt(System.getProperty("pnglevel", "" + PngBandWriter.LEVEL));
+				PngBandWriter.FILTER = PngBandWriter.Filter.valueOf(System.getProperty("pngfilter", "adaptive").toUpperCase(Locale.ROOT));
+				PngBandWriter.THREADS = Integer.parseInt(System.getProperty("pngthreads", "" + PngBandWriter.THREADS));
+				SwapMetrics.SUMMARY = Boolean.getBoolean("summary");
+				if (Boolean.getBoolean("metrics"))
+					SwapMetrics.register();
+
+				String cache = System.getProperty("cache", DictionaryCache.DIRECTORY.getPath());
+				DictionaryCache.DIRECTORY = cache.equals("none") ? null : new File(cache);
+				DictionaryCache.CAPACITY = Integer.parseInt(System.getProperty("cachesize", "8"));
 
 				n = new Network(seed);
 				
@@ -79,399 +109,267 @@ public class Encryption
 				else if (mode.equals("optimise"))
 					{
 						/* Get the optimum Network variables for the best balanced network, i.e. lowest standardDeviation */
-						getOptimumSeed();
+						int threads = Integer.parseInt(System.getProperty("threads", "" + Runtime.getRuntime().availableProcessors()));
+						long timeLimit = (long) (Double.parseDouble(System.getProperty("time", "0")) * 1000);
+						long iterations = Long.parseLong(System.getProperty("iterations", "0"));
+						double target = Double.parseDouble(System.getProperty("target", "0"));
+						double confidence = Double.parseDouble(System.getProperty("confidence", "0.999"));
+						String csv = System.getProperty("csv");
+
+						try
+							{
+								SeedSearch.search(threads, timeLimit, iterations, target, confidence, csv == null ? null : new File(csv));
+							}
+						catch (Exception e)
+							{
+								e.printStackTrace();
+							}
 					}
 				else if (mode.equals("graph"))
 					{
 						/* Get a graph of the Standard Deviations across a range of leeways, don't forget you can also set the number of LEVELS in the Network */
 						float minLeeway = Float.parseFloat(System.getProperty("minleeway", "0"));
 						float maxLeeway = Float.parseFloat(System.getProperty("maxleeway", "0.4"));
-						getGraphOfStats(minLeeway, maxLeeway);
+						int samples = Integer.parseInt(System.getProperty("samples", "250"));
+						int minLevels = Integer.parseInt(System.getProperty("minlevels", "" + Network.LEVELS));
+						int maxLevels = Integer.parseInt(System.getProperty("maxlevels", "" + minLevels));
+						String graphFile = System.getProperty("out", System.getProperty("user.home") + "/Desktop" + "/graph_" + minLeeway + "_" + maxLeeway + ".png");
+						int threads = Integer.parseInt(System.getProperty("threads", "" + Runtime.getRuntime().availableProcessors()));
+
+						getGraphOfStats(minLeeway, maxLeeway, samples, minLevels, maxLevels, new File(graphFile), threads);
 					}
 				else if (mode.equals("SWAP_MESSAGES"))
 					{
-						// Check if user set a seed, otherwise use default value
-						new Encryption(seed);
+						/* Choose each image to swap with a dialog, the only mode that needs a display */
+						SwapDialog.show(n, currentDirectory);
 					}
-				else
+				else if (mode.equals("batch"))
 					{
-						JOptionPane
-								.showMessageDialog(
-										null,
-										"Invalid mode specified try: \n -Doptimise get the optimum seed for the current network parameters \n -Dstats to see stats on the network \n -Ddictionary to print a complete set of character representations",
-										"Error", JOptionPane.ERROR_MESSAGE);
+						/* Swap the messages of every image in a directory (or listed in a file) without any dialogs, using several threads at once */
+						String input = System.getProperty("input");
+						String files = System.getProperty("files");
+						String output = System.getProperty("output");
+						int threads = Integer.parseInt(System.getProperty("threads", "" + Runtime.getRuntime().availableProcessors()));
+
+						if (input == null && files == null)
+							System.err.println("Specify the images to swap with -Dinput=<i>a directory</i> or -Dfiles=<i>a file listing one image per line</i>");
+						else
+							try
+								{
+									Batch.swapMessages(n, input == null ? null : new File(input), files == null ? null : new File(files), output == null ? null
+											: new File(output), threads);
+								}
+							catch (Exception e)
+								{
+									e.printStackTrace();
+								}
 					}
-			}
+				else if (mode.equals("scan"))
+					{
+						/* Report which images in a directory tree hold a message, reading only the top row of 4*4 squares of each */
+						String input = System.getProperty("input");
+						String out = System.getProperty("out");
+						int threads = Integer.parseInt(System.getProperty("threads", "" + Runtime.getRuntime().availableProcessors()));
+						Scan.MIN_SCORE = Double.parseDouble(System.getProperty("minscore", "" + Scan.MIN_SCORE));
+
+						if (input == null)
+							System.err.println("Specify the directory to scan with -Dinput=<i>a directory</i>");
+						else
+							try
+								{
+									Scan.scan(n, new File(input), out == null ? null : new File(out), threads);
+								}
+							catch (Exception e)
+								{
+									e.printStackTrace();
+								}
+					}
+				else if (mode.equals("embed") || mode.equals("extract"))
+					{
+						/* Hide a message (-Dformat=text) or any file at all (-Dformat=bytes) in a single image, or read one back out */
+						String image = System.getProperty("image");
+						String format = System.getProperty("format", "text");
+						String out = System.getProperty("out");
 
-		/**
-		 * The only Constructor for the {@link Encryption} class.
-		 * <p>
-		 * The user is asked to select an image file using a {@link JFileChooser}, then that image has any internal message decrypted into its new filename and
-		 * its old filename encrypted into it as a message.
-		 */
-		private Encryption(int seed)
-			{
-				boolean goAgain = true;
+						if (image == null || (!format.equals("text") && !format.equals("bytes")))
+							System.err.println("Specify the image with -Dimage=<i>a file</i> and the format with -Dformat=<i>text or bytes</i>");
+						else
+							try
+								{
+									StegoCodec codec = new StegoCodec(seed, Network.LEEWAY, Network.LEVELS, SwapCodec.HEADER, DictionaryCache.DIRECTORY);
 
-				// Go until the user does not chose an image
-				while (goAgain)
+									if (mode.equals("embed"))
+										embed(codec, new File(image), format.equals("bytes"), System.getProperty("message"), System.getProperty("payload"),
+												Boolean.getBoolean("alpha"), SwapCodec.COMPRESS, out == null ? null : new File(out));
+									else
+										extract(codec, new File(image), format.equals("bytes"), out == null ? null : new File(out));
+								}
+							catch (Exception e)
+								{
+									e.printStackTrace();
+								}
+					}
+				else if (mode.equals("toraw") || mode.equals("topng") || mode.equals("clean"))
+					{
+						/* Convert an image to or from a raw image that messages can be hidden in and read from in place, or clean a raw image in place */
+						String image = System.getProperty("image");
+						String out = System.getProperty("out");
+
+						if (image == null || (out == null && !mode.equals("clean")))
+							System.err.println("Specify the image with -Dimage=<i>a file</i> and where to save it with -Dout=<i>a file</i>");
+						else
+							try
+								{
+									if (mode.equals("toraw"))
+										StegoCodec.toRaw(new File(image), new File(out));
+									else if (mode.equals("topng"))
+										StegoCodec.toPng(new File(image), new File(out));
+									else
+										new StegoCodec(seed, Network.LEEWAY, Network.LEVELS, false, DictionaryCache.DIRECTORY).cleanInPlace(new File(image));
+								}
+							catch (Exception e)
+								{
+									e.printStackTrace();
+								}
+					}
+				else if (mode.equals("serve"))
 					{
-						// Code to load the desired
-						JFileChooser chooser = new JFileChooser(currentDirectory);
-						FileNameExtensionFilter filter = new FileNameExtensionFilter("Certain Image types only", "jpg", "png");
-						chooser.setFileFilter(filter);
-
-						// if the user chose an image
-						int returnVal = chooser.showOpenDialog(null);
-						if (returnVal == JFileChooser.APPROVE_OPTION)
+						/* Embed and extract messages over HTTP on localhost, so other programs don't have to start a JVM for every image */
+						int port = Integer.parseInt(System.getProperty("port", "8080"));
+						int maxRequests = Integer.parseInt(System.getProperty("maxrequests", "" + Runtime.getRuntime().availableProcessors()));
+						long maxBody = Long.parseLong(System.getProperty("maxbody", "32")) * 1024 * 1024;
+						long maxPixels = Long.parseLong(System.getProperty("maxpixels", "16")) * 1000 * 1000;
+
+						try
 							{
-								try
-									{
-										// Get the user to select an image file
-										imageFile = chooser.getSelectedFile();
-										BufferedImage img = ImageIO.read(imageFile);
-
-										/*
-										 * Swap the filename with the encrypted message in the image, note that gibberish will be extracted from any file with
-										 * no message previously encoded into it
-										 */
-										swapInformation(img);
-									}
-								catch (Exception e)
-									{
-										JOptionPane.showMessageDialog(null, "Sorry but that image doesn't work!", "Error", JOptionPane.ERROR_MESSAGE);
-										e.printStackTrace();
-									}
+								StegoCodec codec = new StegoCodec(seed, Network.LEEWAY, Network.LEVELS, SwapCodec.HEADER, DictionaryCache.DIRECTORY);
+								Server.serve(codec, port, maxRequests, maxBody, maxPixels);
 							}
-						// else quit the program
-						else
-							goAgain = false;
+						catch (Exception e)
+							{
+								e.printStackTrace();
+							}
+					}
+				else
+					{
+						System.err.println("Invalid mode specified, try:\n"
+								+ " -Dmode=SWAP_MESSAGES to swap the message in an image for its file name (the default)\n"
+								+ " -Dmode=optimise to get the optimum seed for the current network parameters\n"
+								+ " -Dmode=stats to see stats on the network\n"
+								+ " -Dmode=graph to sample the network's stats over a range of leeways\n"
+								+ " -Dmode=dictionary to print a complete set of character representations\n"
+								+ " -Dmode=batch to swap the messages of a whole directory of images\n"
+								+ " -Dmode=scan to find which images in a directory tree hold a message\n"
+								+ " -Dmode=embed or -Dmode=extract to hide a message or file in a single image, or read it back\n"
+								+ " -Dmode=toraw, -Dmode=topng or -Dmode=clean to work on raw images in place\n"
+								+ " -Dmode=serve to embed and extract messages over HTTP");
 					}
 			}
 
 		/**
-		 * This Method Treats the file name of the image as one message and any information encoded within the image as the second, it then swaps these messages
-		 * around, encoding the file name into the image and renaming the image to the previously encoded message.
-		 * 
-		 * @param img
-		 *            - The image file that we want to extract a message from and hide a message within.
-		 * @param newFileName
-		 *            - What the file will be renamed to (Whatever was previously stored within the image file)
+		 * Hides a message or payload in an image, saving the result as a PNG.
+		 *
+		 * @param bytes
+		 *            - true to hide the payload file as bytes, false to hide the message (or the text of the payload file) as characters
+		 * @param message
+		 *            - the message to hide, or null to read it from the payload file
+		 * @param payload
+		 *            - the file to hide
+		 * @param alpha
+		 *            - whether a payload uses the alpha values of the image as well as RGB
+		 * @param compress
+		 *            - whether a payload is compressed with Deflate first
+		 * @param out
+		 *            - where to save the image, or null to save it next to the original image as a PNG (or in place of it, for a raw image)
 		 */
-		private final void swapInformation(BufferedImage img)
+		private static void embed(StegoCodec codec, File image, boolean bytes, String message, String payload, boolean alpha, boolean compress,
+				File out) throws Exception
 			{
-				/* Extract the message currently encoded within the image (will be gibberish if this is the first time this program has been run on an image). */
-				String newFileName = getCurrentlyEncryptedMessage(img);
-
-				// Then wipe the old message from the image, ready for the new image to be saved
-				cleanImage(img);
-
-				/* Get the message from the filename, we add the terminating character to it so that the Network knows when to stop decoding when it tries to */
-				String message = "x" + imageFile.getName().substring(0, imageFile.getName().indexOf('.')) + '{';
-
-				// The index of the current character that we are writing to in the image
-				int xIndex = 0, yIndex = 0;
+				if (message == null && payload == null)
+					throw new IllegalArgumentException("Specify what to hide with -Dmessage=<i>some text</i> or -Dpayload=<i>a file</i>");
 
-				// represents the data to be encoded into the character
-				boolean[] startNodeStates = { false, false, false, false, false, false, false, false, false, false, false, false, false, false, false, false };
-
-				// While there is still message to be encoded (it will be shortened as the encoding happens)
-				do
+				if (RawImage.isRaw(image))
 					{
-						// The next character we want to encode
-						char charToEncode = message.charAt(0);
-						Character.toLowerCase(charToEncode);
-
-						// If the character is a space, '{' or an alphabetic character then encode it, otherwise skip it
-						if (charToEncode == ' ' || ((int) charToEncode >= 97 && (int) charToEncode <= 123))
-							{
-
-								/*
-								 * while our data doesn't represent our desired character, randomise it until it does... (it works fast enough for short
-								 * messages, perhaps making a dictionary beforehand would be a better choice for much longer messages?)
-								 */
-								while (n.getLetter(startNodeStates) != charToEncode)
-									for (int i = 0; i < 16; i++)
-										startNodeStates[i] = n.r.nextBoolean();
-
-								// Overlay the data for the character in the correct spot
-								for (int x = 0; x < 4; x++)
-									for (int y = 0; y < 4; y++)
-										if (startNodeStates[x + (y * 4)])
-											img.setRGB((xIndex * 4) + x, (yIndex * 4) + y, img.getRGB((xIndex * 4) + x, (yIndex * 4) + y) + 1);
-
-								// move onto the next space in the image to encode the next letter
-								xIndex++;
-								if (xIndex >= (int) (img.getWidth() / 4))
-									{
-										xIndex = 0;
-										yIndex++;
-										// if we have run out of room in the image, exit this loop
-										if (yIndex >= (int) (img.getHeight() / 4))
-											{
-												System.out.println("Sorry but your message was too long for the image the following was lost: \n -" + message.substring(0, message.lastIndexOf('{')));
-												message = "{";
-											}
-									}
-							}
-
-						// If there is still message left to encode remove the first letter so we know we are on the next one
-						message = message.substring(1);
+						embedInPlace(codec, image, bytes, message, payload, alpha, compress, out);
+						return;
 					}
-				while (message.length() > 0);
 
-				// once the entire message has been encoded, random data is used to fill the rest of the image
-				fillImageWithRandomData(img, xIndex, yIndex);
+				if (out == null)
+					out = new File(image.getParentFile(), image.getName().replaceFirst("\\.[^.]*$", "") + ".png");
 
-				// Save the file as an image called img.jpg
-				try
+				// Written to a temporary file first in case the image is being overwritten
+				File temporary = File.createTempFile("embed", ".png", out.getAbsoluteFile().getParentFile());
+				try (InputStream in = new FileInputStream(image); OutputStream png = new FileOutputStream(temporary))
 					{
-						// write the new image data to the newly renamed image
-						ImageIO.write(img, "png", imageFile);
-						// Get the file extension
-						String fileExtension = imageFile.getName().substring(imageFile.getName().indexOf('.'), imageFile.getName().length());
-						// create a new file with a new name
-						File renamedImage = new File(imageFile.getParent() + "\\" + newFileName + fileExtension);
-						// replace the old image
-						imageFile.renameTo(renamedImage);
+						if (bytes)
+							try (InputStream data = message != null ? new ByteArrayInputStream(message.getBytes(StandardCharsets.UTF_8)) : new FileInputStream(payload))
+								{
+									System.out.println("Hid " + codec.embedPayload(in, png, data, alpha, compress) + " bytes");
+								}
+						else
+							try (Reader text = message != null ? new StringReader(message) : new FileReader(payload, StandardCharsets.UTF_8))
+								{
+									System.out.println("Hid " + codec.embed(in, png, text) + " characters");
+								}
 					}
 				catch (Exception e)
 					{
-						e.printStackTrace();
+						temporary.delete();
+						throw e;
 					}
+
+				Files.move(temporary.toPath(), out.toPath(), StandardCopyOption.REPLACE_EXISTING);
 			}
 
 		/**
-		 * This method extracts data encrypted into an image using the encrypt method. It assumes the default seed was used to generate the neural network
-		 * unless another seed is explicitly supplied in the command line.
-		 * 
-		 * @param img
-		 *            - A BufferedImage containing encrypted data
-		 * 
+		 * The same as {@link #embed(StegoCodec, File, boolean, String, String, boolean, boolean, File)} for a raw image, which is changed in place (or copied
+		 * to out first, if given) rather than decoded and encoded again.
 		 */
-		private final String getCurrentlyEncryptedMessage(BufferedImage img)
+		private static void embedInPlace(StegoCodec codec, File image, boolean bytes, String message, String payload, boolean alpha, boolean compress,
+				File out) throws Exception
 			{
-				String message = "";
+				if (out != null)
+					image = Files.copy(image.toPath(), out.toPath(), StandardCopyOption.REPLACE_EXISTING).toFile();
 
-				// represents the data extracted, will be passed through neural network
-				boolean[] startNodeStates = new boolean[16];
-
-				// for each character of data that can be stored (4*4 square)
-				for (int y = 0; y < (int) (img.getHeight() / 4); y++)
-					for (int x = 0; x < (int) (img.getWidth() / 4); x++)
+				if (bytes)
+					try (InputStream data = message != null ? new ByteArrayInputStream(message.getBytes(StandardCharsets.UTF_8)) : new FileInputStream(payload))
 						{
-							// for each pixel in that character
-							for (int x2 = 0; x2 < 4; x2++)
-								for (int y2 = 0; y2 < 4; y2++)
-									/* Get the starting state for it's corresponding node in the first level of nodes in the network */
-									startNodeStates[x2 + (y2 * 4)] = (img.getRGB((x * 4) + x2, (y * 4) + y2) % 2 != 0);
-
-							// Turn the data into the next character
-							message = message + n.getLetter(startNodeStates);
+							System.out.println("Hid " + codec.embedPayloadInPlace(image, data, alpha, compress) + " bytes");
 						}
-
-				// trim the message from the start to the first instance of the terminating character
-				if (message.indexOf('{') > 1)
-					message = message.substring(1, message.indexOf('{'));
-
-				return message;
-			}
-
-		/**
-		 * This method cycles through the images RGB values and makes sure that they are all even numbers. It does so in the same pattern that data will be
-		 * inserted in to avoid leaving the unusable edges of the picture with totally uniform data.
-		 * 
-		 * @param img
-		 *            - The image to be set to a non-encoded state
-		 * @return The same image with an imperceptable colour shift that has no extra encoded information
-		 */
-		private void cleanImage(BufferedImage img)
-			{
-				int maxX = ((int) (img.getWidth() / 4)) * 4;
-				int maxY = ((int) (img.getHeight() / 4)) * 4;
-
-				// for each pixel that could ever be part of a message
-				for (int x = 0; x < maxX; x++)
-					for (int y = 0; y < maxY; y++)
-						// if RGB value isn't even, make it even
-						if (img.getRGB(x, y) % 2 != 0)
-							img.setRGB(x, y, img.getRGB(x, y) - 1);
-			}
-
-		/**
-		 * Fills the image with random data, an x or y index can be chosen so that an encrypted message already within the image isn't overwritten.
-		 * 
-		 * @param img
-		 *            - the image to be filled with random data
-		 * @param startX
-		 *            - not the absolute x pixel position but the index of the character of data to start at
-		 * @param startY
-		 *            - not the absolute y pixel position but the index of the character of data to start at
-		 */
-		private void fillImageWithRandomData(BufferedImage img, int startX, int startY)
-			{
-				final Random r = new Random();
-
-				// for each character of data that can be stored (4*4 square)
-				for (int x = startX; x < (int) (img.getWidth() / 4); x++)
-					for (int y = startY; y < (int) (img.getHeight() / 4); y++)
+				else
+					try (Reader text = message != null ? new StringReader(message) : new FileReader(payload, StandardCharsets.UTF_8))
 						{
-							// for each bit of data that can be stored for that character
-							for (int x2 = 0; x2 < 4; x2++)
-								for (int y2 = 0; y2 < 4; y2++)
-									if (r.nextBoolean())
-										// Overwrite the bit of data with an odd value
-										img.setRGB((x * 4) + x2, (y * 4) + y2, img.getRGB((x * 4) + x2, (y * 4) + y2) + 1);
-							/* it is assumed that the image has been "cleaned" prior to the addition of random data so all RGB values are even */
+							System.out.println("Hid " + codec.embedInPlace(image, text) + " characters");
 						}
 			}
 
-		private static class Network
+		/**
+		 * Reads the message or payload hidden in an image.
+		 *
+		 * @param bytes
+		 *            - true to read a payload, false to read a message
+		 * @param out
+		 *            - where to save what was read, or null to print it
+		 */
+		private static void extract(StegoCodec codec, File image, boolean bytes, File out) throws Exception
 			{
-				/**
-				 * One for each character we want to be able to recognise
-				 */
-				static final int NODES_PER_LEVEL = 28;
-				/**
-				 * The number of floats stored to represent a single Node
-				 * <p>
-				 * { Node's {@link #GOAL}, Node's {@link #STATE}, weight of connection to node 0, weight of connection to node 1... }
-				 */
-				static final int DATA_PER_NODE = NODES_PER_LEVEL + 2;
-				/**
-				 * The number of levels that the {@link Network} has.
-				 */
-				static int LEVELS;
-
-				/**
-				 * The state that the node needs to reach in order to be triggered (give or take the {@link #LEEWAY})
-				 */
-				static final int GOAL = 0;
-				/**
-				 * The current state of the Node
-				 */
-				static final int STATE = 1;
-
-				/**
-				 * If a Node's state is within the range of (its goal +/- {@link Network#LEEWAY}) then it is triggered
-				 */
-				static float LEEWAY;
-
-				final Random r;
-
-				/**
-				 * float[<i>The data for a Node</i>][<i>Times the number of nodes in a level</i>][<i>Times the number of levels in the network</i>]
-				 * <p>
-				 * The data for a node: { Nodes goal, Nodes State, weight of connection to node 0, weight of connection to node 1... }
-				 * <ul>
-				 * <li>A nodes state is the summation of all of the weights of the connections from triggered nodes in the layer above</li>
-				 * <li>A nodes goal is the state it needs to be triggered itself</li>
-				 * </ul>
-				 * <p>
-				 */
-				float[][][] network;
-
-				/**
-				 * Initialises a {@link Network} and sets the node weights to random values, using a known seed to ensure it is constructed identically each
-				 * time.
-				 * <p>
-				 * {@link Network#LEEWAY} and {@link Network#LEVELS} can be set by command line parameters (-Dleeway=<i>a float</i> & -Dlevels=<i>an
-				 * integer</i>)
-				 */
-				private Network(int seed)
-					{
-						network = new float[DATA_PER_NODE][NODES_PER_LEVEL][LEVELS];
-
-						// seed our random number generator to ensure we can rebuild the network
-						r = new java.util.Random(seed);
-
-						for (int x = 0; x < DATA_PER_NODE; x++)
-							for (int y = 0; y < NODES_PER_LEVEL; y++)
-								for (int z = 0; z < LEVELS; z++)
-									if (x == STATE)
-										network[x][y][z] = 0;
-									else
-										network[x][y][z] = r.nextFloat() - 0.5f;
-					}
-
-				/**
-				 * For a 16 long set of booleans (representing a 4*4 grid) feeds the information into the network and translates it into a letter of the
-				 * alphabet or the terminating character '{'
-				 * 
-				 * @param firstLevelNodeStates
-				 *            - each state represents whether a node in the first level of the network will fire.
-				 * @return - an non-capital alphabet character or "{" which is the termination character.
-				 */
-				private char getLetter(boolean[] firstLevelNodeStates)
+				// Only the rows of the image holding the message are read (and a raw image is read in place)
+				if (!bytes)
 					{
-						// Set up the starting nodes so only the relevant ones fire
-						for (int i = 0; i < firstLevelNodeStates.length; i++)
-							if (firstLevelNodeStates[i]) // If Node needs to fire
-								// Make its STATE == its GOAL to guarantee firing
-								network[STATE][i][0] += network[GOAL][i][0];
-
-						/*
-						 * For each level (except the last), for each node in that level: Check if that node has fired.
-						 * 
-						 * If it has, for each connection, update the connected nodes STATE by adding the connections value to it
-						 */
-						for (int z = 0; z < LEVELS - 1; z++)
-							for (int y = 0; y < NODES_PER_LEVEL; y++)
-								if (getNodeDifference(y, z) < LEEWAY)
-									for (int x = 2; x < DATA_PER_NODE; x++)
-										network[STATE][x - 2][z + 1] += network[x][y][z];
-
-						// Find which of the nodes in the final level is closest to its goal value
-						int closestNodeNum = 0;
-						float closetsNodeValue = getNodeDifference(0, LEVELS - 1);
-
-						/*
-						 * for each node, check if its GOAL more closely matches its STATE than the previous best, if it does, replace closestNodeNum with the
-						 * nodes own index
-						 */
-						for (int i = 0; i < NODES_PER_LEVEL; i++)
-							if (getNodeDifference(i, LEVELS - 1) < closetsNodeValue)
-								{
-									closestNodeNum = i;
-									closetsNodeValue = getNodeDifference(i, LEVELS - 1);
-								}
-
-						// Reset the network so it is ready to be used again
-						resetStates();
-
-						/*
-						 * Get the character that we want to return ascii 'a' -> '{' = 97 -> 123
-						 */
-						char charToReturn = new Character((char) (closestNodeNum + 97));
-
-						if (closestNodeNum == NODES_PER_LEVEL - 1)
-							charToReturn = ' ';
-
-						return charToReturn;
-					}
-
-				/**
-				 * Calculates how close a node's STATE is to its GOAL
-				 * 
-				 * @param y
-				 *            the number of the node
-				 * @param z
-				 *            the LEVEL that the node is in
-				 * @return the absolute difference between the node's STATE and GOAL
-				 */
-				private float getNodeDifference(int y, int z)
-					{
-						return Math.abs((Math.abs(network[GOAL][y][z]) - Math.abs(network[STATE][y][z])));
+						if (out != null)
+							Files.write(out.toPath(), codec.extract(image).getBytes(StandardCharsets.UTF_8));
+						else
+							System.out.println(codec.extract(image));
 					}
-
-				/**
-				 * Resets the network so that all node states are 0, ready for the next use.
-				 */
-				private void resetStates()
+				else if (out != null)
+					try (OutputStream data = new FileOutputStream(out))
+						{
+							System.out.println("Read " + codec.extractPayload(image, data) + " bytes");
+						}
+				else
 					{
-						for (int y = 0; y < NODES_PER_LEVEL; y++)
-							for (int z = 0; z < LEVELS; z++)
-								network[STATE][y][z] = 0;
+						codec.extractPayload(image, System.out);
+						System.out.flush();
 					}
 			}
 
@@ -487,22 +385,18 @@ public class Encryption
 		 */
 		private final static void printDictionary()
 			{
-				boolean[] letterInformation = { false, false, false, false, false, false, false, false, false, false, false, false, false, false, false, false };
-				boolean repeat = true;
-
 				int counter = 0;
+				Dictionary dictionary = DictionaryCache.get(n);
 
-				while (repeat)
+				for (int pattern = 0; pattern < 1 << Network.STARTING_NODES; pattern++)
 					{
-						System.out.print(n.getLetter(letterInformation));
+						System.out.print(dictionary.getLetter(pattern));
 						counter++;
 						if (counter > 200)
 							{
 								counter = 0;
 								System.out.println();
 							}
-
-						repeat = letterInformationIncrement(letterInformation);
 					}
 				System.out.println();
 			}
@@ -518,21 +412,8 @@ public class Encryption
 		 */
 		private final static void printStats()
 			{
-				boolean[] letterInformation = { false, false, false, false, false, false, false, false, false, false, false, false, false, false, false, false };
-				boolean repeat = true;
-
-				int[] charFrequency = new int[Network.NODES_PER_LEVEL];
-
-				while (repeat)
-					{
-						int character = (int) (n.getLetter(letterInformation) - 97);
-						if (character == -65)
-							character = Network.NODES_PER_LEVEL - 1;
-
-						charFrequency[character]++;
+				int[] charFrequency = DictionaryCache.get(n).getCharFrequencies();
 
-						repeat = letterInformationIncrement(letterInformation);
-					}
 				double mean = getMean(charFrequency);
 				double total = mean * charFrequency.length;
 				double stdv = getStandardDeviation(charFrequency, mean);
@@ -545,117 +426,96 @@ public class Encryption
 				System.out.println(" }");
 			}
 
-		private static final void getOptimumSeed()
-			{
-				Random r = new Random();
-
-				int bestSeed = 54343;
-				double bestStdv = 1000000;
-
-				boolean goAgain = true;
-
-				// For each pair of spaces in our graph data
-				while (goAgain)
-					{
-						// Chose a random seed and test the network's standard deviation
-						int newSeed = r.nextInt();
-						n = new Network(newSeed);
-
-						// create the memory for our startingNodeStates
-						boolean[] letterInformation = { false, false, false, false, false, false, false, false, false, false, false, false, false, false, false, false };
-						boolean repeat = true;
-
-						// set aside memory to record the frequency our network returns each character
-						int[] charFrequency = new int[Network.NODES_PER_LEVEL];
-
-						// for each and every combination of staryingNodeStates (2^16)
-						while (repeat)
-							{
-								int character = (int) (n.getLetter(letterInformation) - 97);
-								if (character == -65)
-									character = Network.NODES_PER_LEVEL - 1;
-
-								charFrequency[character]++;
-
-								// increment the startingNodeStates
-								repeat = letterInformationIncrement(letterInformation);
-							}
-
-						// Calculate the standard deviation
-						double stdv = getStandardDeviation(charFrequency, getMean(charFrequency));
-
-						// If a better solution is found, notify user and ask if they want to continue the search
-						if (stdv < bestStdv)
-							{								
-								bestSeed = newSeed;
-								bestStdv = stdv;
-
-								goAgain = JOptionPane.showConfirmDialog(null, "Found a better seed: " + bestSeed + ", Standard Deviation: \n " + bestStdv + "   (< 400 = very good)", "Keep Searching?", JOptionPane.OK_CANCEL_OPTION) == JOptionPane.OK_OPTION;
-							
-								System.out.println();
-								System.out.println("Seed: " + bestSeed + "     for: LEEWAY == " + Network.LEEWAY + " | LEVELS == " + Network.LEVELS);
-							}
-						else
-							{
-								System.out.print(".");
-								System.out.flush();
-							}
-					}
-				System.out.println("Best Seed: " + bestSeed + "     for: LEEWAY == " + Network.LEEWAY + " | LEVELS == " + Network.LEVELS);
-			}
-
 		/**
-		 * Get a graph of the Standard Deviations across a range of leeways.
-		 * 
+		 * Get a graph of the Standard Deviations across a range of leeways, and optionally a range of levels.
+		 * <p>
+		 * Each sample is a {@link Network} with a random seed, a LEEWAY randomly selected from the range and a number of LEVELS randomly selected from the
+		 * range. As every network has its own leeway and levels the samples are spread across several threads. The raw data points are written to a CSV file
+		 * alongside the graph.
+		 *
 		 * @param minLeeway
 		 *            - The minimum LEEWAY value on the x axis.
 		 * @param maxLeeway
 		 *            - the maximum LEEWAY value on the x axis.
+		 * @param samples
+		 *            - the number of networks to plot
+		 * @param minLevels
+		 *            - the minimum number of LEVELS a network can have
+		 * @param maxLevels
+		 *            - the maximum number of LEVELS a network can have
+		 * @param graphFile
+		 *            - where to save the graph, the CSV file is saved next to it with the same name
+		 * @param threads
+		 *            - the number of networks to test at once
 		 */
-		private static final void getGraphOfStats(float minLeeway, float maxLeeway)
+		private static final void getGraphOfStats(float minLeeway, float maxLeeway, int samples, int minLevels, int maxLevels, File graphFile, int threads)
 			{
 				Random r = new Random();
 
-				// Memory for our graph's data points {x1, y1, x2, y2, x3...}
-				float[] data = new float[500];
-				// The current index we have got to while filling our data
-				int index = 0;
+				// Memory for our graph's data points {x1, y1, x2, y2, x3...}, and the seed and number of levels of each
+				final float[] data = new float[samples * 2];
+				final double[] stdvs = new double[samples];
+				final int[] seeds = new int[samples];
+				final int[] levels = new int[samples];
 
-				// For each pair of spaces in our graph data
-				for (int i = 0; i < data.length / 2; i++)
+				// Choose every sample up front, so the results don't depend on the order the threads finish in
+				for (int i = 0; i < samples; i++)
 					{
 						// Create a network with a LEEWAY randomly selected from our range.
-						Network.LEEWAY = ((r.nextFloat() * (maxLeeway - minLeeway)) + minLeeway);
-						n = new Network(r.nextInt());
-
-						// create the memory for our startingNodeStates
-						boolean[] letterInformation = { false, false, false, false, false, false, false, false, false, false, false, false, false, false, false, false };
-						boolean repeat = true;
+						data[i * 2] = ((r.nextFloat() * (maxLeeway - minLeeway)) + minLeeway);
+						levels[i] = minLevels + r.nextInt(maxLevels - minLevels + 1);
+						seeds[i] = r.nextInt();
+					}
 
-						// set aside memory to record the frequency our network returns each character
-						int[] charFrequency = new int[Network.NODES_PER_LEVEL];
+				final AtomicInteger completed = new AtomicInteger();
+				final int reportEvery = Math.max(1, samples / 20);
+				List<Callable<Void>> tasks = new ArrayList<Callable<Void>>(samples);
 
-						// for each and every combination of staryingNodeStates (2^16)
-						while (repeat)
+				for (int i = 0; i < samples; i++)
+					{
+						final int index = i;
+						tasks.add(() ->
 							{
-								int character = (int) (n.getLetter(letterInformation) - 97);
-								if (character == -65)
-									character = Network.NODES_PER_LEVEL - 1;
+								// Calculate the standard deviation
+								int[] charFrequency = new Network(seeds[index], data[index * 2], levels[index]).getCharFrequencies();
+								stdvs[index] = getStandardDeviation(charFrequency, getMean(charFrequency));
 
-								charFrequency[character]++;
+								// Add the data to our data points
+								data[(index * 2) + 1] = Math.round(stdvs[index]);
 
-								repeat = letterInformationIncrement(letterInformation);
-							}
-
-						// Calculate the standard deviation
-						double stdv = getStandardDeviation(charFrequency, getMean(charFrequency));
+								if (completed.incrementAndGet() % reportEvery == 0)
+									System.out.println("Sampled " + completed.get() + " of " + samples + " networks");
+								return null;
+							});
+					}
 
-						// Add the data to our data points
-						data[index] = Network.LEEWAY;
-						data[index + 1] = Math.round(stdv);
+				ExecutorService workers = Executors.newFixedThreadPool(threads);
+				try
+					{
+						for (Future<Void> result : workers.invokeAll(tasks))
+							result.get();
+					}
+				catch (Exception e)
+					{
+						e.printStackTrace();
+						return;
+					}
+				finally
+					{
+						workers.shutdown();
+					}
 
-						// Move onto the next data point
-						index += 2;
+				// Save the raw data points next to the graph
+				File csvFile = new File(graphFile.getParentFile(), graphFile.getName().replaceFirst("\\.png$", "") + ".csv");
+				try (PrintWriter csv = new PrintWriter(csvFile))
+					{
+						csv.println("levels,leeway,seed,stdv");
+						for (int i = 0; i < samples; i++)
+							csv.println(levels[i] + "," + data[i * 2] + "," + seeds[i] + "," + stdvs[i]);
+					}
+				catch (Exception e)
+					{
+						e.printStackTrace();
 					}
 
 				// ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
@@ -701,66 +561,55 @@ public class Encryption
 				g.drawString("" + (int) highY, 2, 12);
 				g.drawString("Std Deviation", 2, height / 2);
 
+				// Give each number of levels its own colour, with a key in the top right corner
+				Color[] levelColours = new Color[maxLevels - minLevels + 1];
+				for (int i = 0; i < levelColours.length; i++)
+					{
+						Color colour = levelColours.length == 1 ? Color.BLACK : Color.getHSBColor((float) i / levelColours.length, 1, 0.8f);
+						levelColours[i] = new Color(colour.getRed(), colour.getGreen(), colour.getBlue(), 50);
+
+						if (levelColours.length > 1)
+							{
+								g.setColor(colour);
+								g.fillRect(width - 100, 10 + (i * 20), pointSize, pointSize);
+								g.drawString("LEVELS == " + (minLevels + i), width - 85, 20 + (i * 20));
+							}
+					}
+
 				// Draw the points
-				g.setColor(new Color(0, 0, 0, 50));
 				for (int i = 0; i < data.length; i += 2)
 					{
 						int x = (int) ((data[i] - lowX) * ((width - margin) / (highX - lowX))) + margin - (pointSize / 2);
 						int y = (height - margin) - (int) ((data[i + 1] - lowY) * ((height - margin) / (highY - lowY))) - (pointSize / 2);
+						g.setColor(levelColours[levels[i / 2] - minLevels]);
 						g.fillRect(x, y, pointSize, pointSize);
 					}
 
 				// Save our graph as an image
 				try
 					{
-						imageFile = new File(System.getProperty("user.home") + "/Desktop" + "/graph_" + minLeeway + "_" + maxLeeway + ".png");
-						imageFile.createNewFile();
+						graphFile.createNewFile();
 						// write the new image data to the newly renamed image
-						ImageIO.write(graphImage, "png", imageFile);
+						ImageIO.write(graphImage, "png", graphFile);
 					}
 				catch (Exception e)
 					{
 						e.printStackTrace();
 					}
 
-				System.out.println("DONE");
-				JOptionPane.showMessageDialog(null, "Finished, find the Graph on your desktop named: \n" + System.getProperty("user.home") + "/Desktop" + "/graph_" + minLeeway + "_" + maxLeeway
-						+ ".png", "Complete", JOptionPane.INFORMATION_MESSAGE);
-				return;
+				System.out.println("DONE, find the graph named " + graphFile + " and its data points in " + csvFile);
 			}
 
 		/*
 		 * The following methods were used for debugging & fine tuning the network
 		 */
 
-		/**
-		 * Basically treats the startingNodeStates as a binary number and increments it.
-		 * 
-		 * @param states
-		 *            the startingNodeStates that can be pssed through the network in order
-		 * @return
-		 */
-		private final static boolean letterInformationIncrement(boolean[] states)
-			{
-				for (int i = 0; i < states.length; i++)
-					{
-						states[i] = !states[i];
-						if (i == states.length - 1 && !states[i])
-							{
-								return false;
-							}
-						else if (states[i])
-							return true;
-					}
-				return true;
-			}
-
 		/**
 		 * @param char_frequencies
 		 *            - The list of values you want the average for.
 		 * @return - The average value of a list of integers.
 		 */
-		private static final double getMean(int[] char_frequencies)
+		static final double getMean(int[] char_frequencies)
 			{
 				double mean = 0;
 				// Add all of our character frequencies up
@@ -778,7 +627,7 @@ public class Encryption
 		 *            - see {@link #getMean(int[])}
 		 * @return - The standard deviation for the list of values.
 		 */
-		private static final double getStandardDeviation(int[] charFrequencies, double mean)
+		static final double getStandardDeviation(int[] charFrequencies, double mean)
 			{
 				double stdv = 0;
 				for (int i = 0; i < charFrequencies.length; i++)
@@ -0,0 +1,127 @@
+package encryption;
+
+/**
+ * Runs every one of the 2^16 startingNodeStates through a {@link Network}, visiting them in Gray code order so that each differs from the last by whether
+ * a single starting node is set, and only working out what that change affects.
+ * <p>
+ * The state of each node in the second level is the sum of the weights from the starting nodes that fired, added up from node 0 upwards. Those sums are
+ * kept for every prefix of the starting nodes, so when starting node <i>k</i> changes only the sums from node <i>k</i> onwards are added up again. The
+ * starting node that changes most often is node 15, then node 14 half as often and so on, so on average fewer than two nodes' weights are added for each
+ * startingNodeStates rather than every node that fired. Adding and subtracting a node's weights as it is set and unset would be even less work, but
+ * floats don't add up the same in a different order, and the character produced has to be exactly the same as {@link Network#getCharacterIndex(int,
+ * float[])} produces.
+ * <p>
+ * Everything after the second level only depends on which of its nodes fired, and far fewer combinations of its nodes fire than there are
+ * startingNodeStates (from a few dozen to around half as many, depending on the leeway), so the character each combination produces is remembered rather
+ * than worked out again.
+ */
+class GraySweep
+	{
+		private static final int NODES = Network.NODES_PER_LEVEL, STARTING_NODES = Network.STARTING_NODES;
+
+		/**
+		 * The size of the table of characters produced by each combination of nodes firing in the second level, twice as many as there can be combinations
+		 * so that the table never gets more than half full.
+		 */
+		private static final int MEMO_SIZE = 2 << STARTING_NODES;
+
+		private GraySweep()
+			{
+			}
+
+		/**
+		 * @param n
+		 *            - the network to run the startingNodeStates through
+		 * @param indices
+		 *            - at least 2^16 bytes, filled with the character index produced by each startingNodeStates
+		 */
+		static void getCharacterIndices(Network n, byte[] indices)
+			{
+				int patterns = 1 << STARTING_NODES;
+
+				if (n.levels == 1)
+					{
+						float[] scratch = new float[Network.SCRATCH_SIZE];
+						for (int pattern = 0; pattern < patterns; pattern++)
+							indices[pattern] = (byte) n.getCharacterIndex(pattern, scratch);
+						return;
+					}
+
+				// sums[k * NODES + x] == the state of node x in the second level from the starting nodes before node k, the last row also has the nodes after
+				// the starting nodes (which only ever fire on their own) added to it
+				float[] sums = new float[(STARTING_NODES + 2) * NODES];
+				float[] scratch = new float[Network.SCRATCH_SIZE];
+
+				// The nodes after the starting nodes that fire on their own
+				int[] idleNodes = new int[Integer.bitCount(n.idleFiring >>> STARTING_NODES)];
+				for (int k = STARTING_NODES, i = 0; k < NODES; k++)
+					if ((n.idleFiring & (1 << k)) != 0)
+						idleNodes[i++] = k;
+
+				int pattern = 0;
+				int firing = n.getStartingFiring(pattern);
+
+				// The first row of sums that has to be worked out again
+				int changed = 0;
+
+				// Open addressing, each combination of nodes that fired in the second level is stored with 1 added so that 0 marks an empty slot
+				int[] memoFiring = n.levels > 2 ? new int[MEMO_SIZE] : null;
+				byte[] memoIndex = n.levels > 2 ? new byte[MEMO_SIZE] : null;
+
+				for (int i = 0; i < patterns; i++)
+					{
+						if (i > 0)
+							{
+								// The bit of the Gray code that changes is the lowest set bit of i, which is mapped to the highest starting node
+								int node = STARTING_NODES - 1 - Integer.numberOfTrailingZeros(i);
+								pattern ^= 1 << node;
+								firing = n.getStartingFiring(pattern);
+								changed = node;
+							}
+
+						for (int k = changed; k < STARTING_NODES; k++)
+							addRow(sums, k * NODES, (k + 1) * NODES, (firing & (1 << k)) != 0 ? n.weights : null, k * NODES);
+
+						// The nodes after the starting nodes are never set, so the same ones fire every time
+						int states = (STARTING_NODES + 1) * NODES;
+						addRow(sums, STARTING_NODES * NODES, states, null, 0);
+						for (int k : idleNodes)
+							addRow(sums, states, states, n.weights, k * NODES);
+
+						int index;
+						if (n.levels == 2)
+							index = n.getClosestFinalNode(sums, states);
+						else
+							{
+								int secondFiring = n.getFiring(1, sums, states);
+								int slot = (secondFiring * 0x9E3779B9) >>> (32 - STARTING_NODES - 1);
+								while (memoFiring[slot] != 0 && memoFiring[slot] != secondFiring + 1)
+									slot = (slot + 1) & (MEMO_SIZE - 1);
+
+								if (memoFiring[slot] == 0)
+									{
+										memoFiring[slot] = secondFiring + 1;
+										memoIndex[slot] = (byte) n.getCharacterIndex(2, secondFiring, scratch);
+									}
+								index = memoIndex[slot];
+							}
+
+						indices[pattern] = (byte) index;
+					}
+			}
+
+		/**
+		 * Sets one row of sums to another row plus the weights from a node, or just copies the row if the node didn't fire.
+		 *
+		 * @param weights
+		 *            - the weights of the {@link Network}, or null if the node didn't fire
+		 */
+		private static void addRow(float[] sums, int from, int to, float[] weights, int connections)
+			{
+				if (weights == null)
+					System.arraycopy(sums, from, sums, to, NODES);
+				else
+					for (int x = 0; x < NODES; x++)
+						sums[to + x] = sums[from + x] + weights[connections + x];
+			}
+	}
@@ -0,0 +1,383 @@
+package encryption;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.zip.InflaterInputStream;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+/**
+ * Reads an image a band of rows at a time, from the top down, so that an image far too big to hold in memory can still have a message swapped into it.
+ * <p>
+ * 8 bit RGB and RGBA PNG files (which are what this program saves every image as) are decoded in a single pass as the bands are read. Any other image is
+ * read through an {@link ImageReader} one source region at a time, which means the reader may have to decode the start of the image again for each band.
+ */
+abstract class ImageBands implements Closeable
+	{
+		/**
+		 * The size of the whole image.
+		 */
+		final int width, height;
+
+		/**
+		 * The row that the next band starts at.
+		 */
+		int nextRow = 0;
+
+		private ImageBands(int width, int height)
+			{
+				this.width = width;
+				this.height = height;
+			}
+
+		/**
+		 * @param file
+		 *            - the image to read
+		 * @return - the bands of the image, read from the top down
+		 * @throws IOException
+		 *             - if the file can not be read or isn't an image
+		 */
+		static ImageBands open(File file) throws IOException
+			{
+				ImageBands png = PngBands.openPng(file);
+				if (png != null)
+					return png;
+
+				ImageInputStream in = ImageIO.createImageInputStream(file);
+				if (in == null)
+					throw new IOException("Can not read: " + file);
+
+				Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+				if (!readers.hasNext())
+					{
+						in.close();
+						throw new IOException("Not a readable image: " + file);
+					}
+
+				ImageReader reader = readers.next();
+				reader.setInput(in, true, true);
+				return new RegionBands(reader, in);
+			}
+
+		/**
+		 * @param bandMemory
+		 *            - roughly how many bytes a single band should take up
+		 * @return - the number of rows in each band, always a multiple of 4 so that no 4*4 square is split between two bands, or the height of the image if
+		 *         the whole image fits in bandMemory
+		 */
+		int getBandRows(long bandMemory)
+			{
+				long rows = bandMemory / (4L * Math.max(width, 1));
+				if (rows >= height)
+					return height;
+
+				return (int) Math.max(4, rows - (rows % 4));
+			}
+
+		/**
+		 * Reads the next band of the image.
+		 *
+		 * @param rows
+		 *            - the number of rows to read, fewer are read if the end of the image is reached first
+		 * @return - the rows of the image, the top row of the band being row 0 of the returned image
+		 * @throws IOException
+		 *             - if the image can not be read
+		 */
+		abstract BufferedImage read(int rows) throws IOException;
+
+		/**
+		 * Reads each band with {@link ImageReadParam#setSourceRegion(Rectangle)}, this works for any image that {@link ImageIO} can read and gives exactly the
+		 * same pixels as {@link ImageIO#read(File)} would.
+		 */
+		private static class RegionBands extends ImageBands
+			{
+				private final ImageReader reader;
+				private final ImageInputStream in;
+
+				private RegionBands(ImageReader reader, ImageInputStream in) throws IOException
+					{
+						super(reader.getWidth(0), reader.getHeight(0));
+						this.reader = reader;
+						this.in = in;
+					}
+
+				@Override
+				BufferedImage read(int rows) throws IOException
+					{
+						rows = Math.min(rows, height - nextRow);
+
+						ImageReadParam param = reader.getDefaultReadParam();
+						param.setSourceRegion(new Rectangle(0, nextRow, width, rows));
+						nextRow += rows;
+
+						return reader.read(0, param);
+					}
+
+				@Override
+				public void close() throws IOException
+					{
+						reader.dispose();
+						in.close();
+					}
+			}
+
+		/**
+		 * Decodes a non interlaced, 8 bit RGB or RGBA PNG file as it is read, into the same {@link BufferedImage#TYPE_3BYTE_BGR} or
+		 * {@link BufferedImage#TYPE_4BYTE_ABGR} images that {@link ImageIO} reads them as.
+		 */
+		private static class PngBands extends ImageBands
+			{
+				private static final long SIGNATURE = 0x89504E470D0A1A0AL;
+				private static final int IHDR = 0x49484452, IDAT = 0x49444154, ICCP = 0x69434350, TRNS = 0x74524E53;
+				private static final int RGB = 2, RGBA = 6;
+
+				/**
+				 * The bytes per pixel, 3 or 4.
+				 */
+				private final int channels;
+				private final InputStream pixels;
+
+				/**
+				 * The filtered row being read and the unfiltered row above it, each with a spare pixel of 0s to the left so no filter needs a special case for
+				 * the first pixel.
+				 */
+				private byte[] row, previousRow;
+
+				private PngBands(int width, int height, int channels, InputStream pixels)
+					{
+						super(width, height);
+						this.channels = channels;
+						this.pixels = pixels;
+						row = new byte[(width + 1) * channels];
+						previousRow = new byte[(width + 1) * channels];
+					}
+
+				/**
+				 * @return - the bands of the PNG file, or null if the file isn't a PNG file that can be decoded as it is read
+				 */
+				private static PngBands openPng(File file) throws IOException
+					{
+						DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+
+						try
+							{
+								if (in.readLong() != SIGNATURE || in.readInt() != 13 || in.readInt() != IHDR)
+									{
+										in.close();
+										return null;
+									}
+
+								int width = in.readInt();
+								int height = in.readInt();
+								int bitDepth = in.readUnsignedByte();
+								int colourType = in.readUnsignedByte();
+								in.skipBytes(2);
+								int interlace = in.readUnsignedByte();
+								in.skipBytes(4);
+
+								if (bitDepth != 8 || (colourType != RGB && colourType != RGBA) || interlace != 0)
+									{
+										in.close();
+										return null;
+									}
+
+								// A size that is negative or too wide for a row to fit in an array is left for the ImageReader to turn down
+								if (width <= 0 || height <= 0 || (width + 1L) * (colourType == RGBA ? 4 : 3) > Integer.MAX_VALUE - 8)
+									{
+										in.close();
+										return null;
+									}
+
+								// Skip to the first block of pixel data, giving up on any image whose colours ImageIO would have to convert
+								int length = in.readInt();
+								int type = in.readInt();
+								while (type != IDAT)
+									{
+										if (type == ICCP || type == TRNS)
+											{
+												in.close();
+												return null;
+											}
+
+										in.skipNBytes(length + 4L);
+										length = in.readInt();
+										type = in.readInt();
+									}
+
+								return new PngBands(width, height, colourType == RGBA ? 4 : 3, new InflaterInputStream(new PixelData(in, length)));
+							}
+						catch (EOFException e)
+							{
+								// Let the ImageReader report what is wrong with the file
+								in.close();
+								return null;
+							}
+						catch (IOException | RuntimeException e)
+							{
+								in.close();
+								throw e;
+							}
+					}
+
+				@Override
+				BufferedImage read(int rows) throws IOException
+					{
+						rows = Math.min(rows, height - nextRow);
+						nextRow += rows;
+
+						BufferedImage band = new BufferedImage(width, rows, channels == 4 ? BufferedImage.TYPE_4BYTE_ABGR : BufferedImage.TYPE_3BYTE_BGR);
+						byte[] data = ((DataBufferByte) band.getRaster().getDataBuffer()).getData();
+
+						int rowLength = width * channels;
+						for (int y = 0; y < rows; y++)
+							{
+								int filter = pixels.read();
+								if (filter < 0)
+									throw new EOFException("The image ends early");
+
+								byte[] swap = previousRow;
+								previousRow = row;
+								row = swap;
+								readFully(row, channels, rowLength);
+								unfilter(filter);
+
+								// PNG stores RGB(A), the image stores (A)BGR
+								for (int x = channels, i = y * rowLength; x < row.length; x += channels, i += channels)
+									{
+										if (channels == 4)
+											{
+												data[i] = row[x + 3];
+												data[i + 1] = row[x + 2];
+												data[i + 2] = row[x + 1];
+												data[i + 3] = row[x];
+											}
+										else
+											{
+												data[i] = row[x + 2];
+												data[i + 1] = row[x + 1];
+												data[i + 2] = row[x];
+											}
+									}
+							}
+
+						return band;
+					}
+
+				/**
+				 * Undoes the filter a PNG encoder applied to {@link #row}, using the already unfiltered {@link #previousRow}.
+				 */
+				private void unfilter(int filter) throws IOException
+					{
+						switch (filter)
+							{
+								case 0:
+									break;
+								case 1:
+									for (int i = channels; i < row.length; i++)
+										row[i] += row[i - channels];
+									break;
+								case 2:
+									for (int i = channels; i < row.length; i++)
+										row[i] += previousRow[i];
+									break;
+								case 3:
+									for (int i = channels; i < row.length; i++)
+										row[i] += ((row[i - channels] & 0xFF) + (previousRow[i] & 0xFF)) >>> 1;
+									break;
+								case 4:
+									for (int i = channels; i < row.length; i++)
+										row[i] += PngBandWriter.paeth(row[i - channels] & 0xFF, previousRow[i] & 0xFF, previousRow[i - channels] & 0xFF);
+									break;
+								default:
+									throw new IOException("Unknown PNG filter: " + filter);
+							}
+					}
+
+				private void readFully(byte[] buffer, int offset, int length) throws IOException
+					{
+						while (length > 0)
+							{
+								int read = pixels.read(buffer, offset, length);
+								if (read < 0)
+									throw new EOFException("The image ends early");
+								offset += read;
+								length -= read;
+							}
+					}
+
+				@Override
+				public void close() throws IOException
+					{
+						pixels.close();
+					}
+			}
+
+		/**
+		 * Joins the contents of consecutive IDAT chunks into the single compressed stream they were split from, ending at the first chunk that isn't an
+		 * IDAT chunk.
+		 */
+		private static class PixelData extends InputStream
+			{
+				private final DataInputStream in;
+
+				/**
+				 * The number of bytes left in the current chunk, or -1 once the last IDAT chunk has been read.
+				 */
+				private int remaining;
+
+				private final byte[] singleByte = new byte[1];
+
+				private PixelData(DataInputStream in, int length)
+					{
+						this.in = in;
+						this.remaining = length;
+					}
+
+				@Override
+				public int read() throws IOException
+					{
+						return read(singleByte, 0, 1) < 0 ? -1 : singleByte[0] & 0xFF;
+					}
+
+				@Override
+				public int read(byte[] b, int off, int len) throws IOException
+					{
+						while (remaining == 0)
+							{
+								// Skip the CRC of the chunk just finished, then move onto the next chunk if it holds more pixels
+								in.skipNBytes(4);
+								int length = in.readInt();
+								remaining = in.readInt() == PngBands.IDAT ? length : -1;
+							}
+
+						if (remaining < 0)
+							return -1;
+
+						int read = in.read(b, off, Math.min(len, remaining));
+						if (read < 0)
+							throw new EOFException("The image ends early");
+
+						remaining -= read;
+						return read;
+					}
+
+				@Override
+				public void close() throws IOException
+					{
+						in.close();
+					}
+			}
+	}
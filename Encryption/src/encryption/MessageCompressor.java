@@ -0,0 +1,176 @@
+package encryption;
+
+import java.math.BigInteger;
+import java.util.PriorityQueue;
+
+/**
+ * Shrinks a message made up of the letters a-z and spaces into fewer characters of the same alphabet, so that it takes up fewer 4*4 squares of an image.
+ * <p>
+ * Each character is first turned into a Huffman code built from how often each letter is used in English, so common letters such as e and space take 3
+ * bits and rare ones such as z take 10, around 4.1 bits per character for English text. The bits are then read as one big number (with a 1 in front so
+ * no leading 0s are lost) and written out in base 27, each digit being one of the 27 characters, which carries 4.75 bits per character. English text comes
+ * out around 14% shorter, text that isn't English may come out longer, see {@link #compress(CharSequence)}.
+ */
+class MessageCompressor
+	{
+		/**
+		 * The characters that can be compressed, in the order of the digits of the base 27 number they are packed into.
+		 */
+		static final String ALPHABET = " abcdefghijklmnopqrstuvwxyz";
+
+		/**
+		 * The longest compressed message that is ever decompressed. Converting between bases takes time that grows with the square of the length, and only
+		 * file names are ever compressed, which are far shorter, so anything longer read out of an image can't have been compressed and is passed on as it
+		 * is rather than costing seconds to turn into gibberish.
+		 */
+		static final int MAX_COMPRESSED = 512;
+
+		/**
+		 * Roughly how many times each character of {@link #ALPHABET} appears in 1000 characters of English text.
+		 */
+		private static final int[] FREQUENCIES = { 182, 65, 13, 22, 33, 102, 20, 16, 50, 57, 1, 6, 33, 20, 57, 62, 15, 1, 50, 53, 75, 23, 8, 17, 2, 14, 1 };
+
+		/**
+		 * The Huffman code of each character of {@link #ALPHABET}, as a string of 0s and 1s.
+		 */
+		private static final String[] CODES = new String[ALPHABET.length()];
+
+		/**
+		 * The Huffman tree, node 0 being the root. A child below 0 is the leaf for character -(child + 1).
+		 */
+		private static final int[] ZERO = new int[ALPHABET.length() - 1], ONE = new int[ALPHABET.length() - 1];
+
+		static
+			{
+				// Nodes are {weight, node}, ties are broken by the node so the tree is always built the same way
+				PriorityQueue<int[]> queue = new PriorityQueue<int[]>((a, b) -> a[0] != b[0] ? Integer.compare(a[0], b[0]) : Integer.compare(a[1], b[1]));
+				for (int c = 0; c < ALPHABET.length(); c++)
+					queue.add(new int[] { FREQUENCIES[c], -(c + 1) });
+
+				// Branches are numbered down from the root so that the last one made is node 0
+				int branch = ZERO.length;
+				while (queue.size() > 1)
+					{
+						int[] zero = queue.poll(), one = queue.poll();
+						branch--;
+						ZERO[branch] = zero[1];
+						ONE[branch] = one[1];
+						queue.add(new int[] { zero[0] + one[0], branch });
+					}
+
+				assignCodes(0, "");
+			}
+
+		private MessageCompressor()
+			{
+			}
+
+		private static void assignCodes(int node, String code)
+			{
+				if (node < 0)
+					CODES[-(node + 1)] = code;
+				else
+					{
+						assignCodes(ZERO[node], code + '0');
+						assignCodes(ONE[node], code + '1');
+					}
+			}
+
+		/**
+		 * @param message
+		 *            - the message to compress, any character not in {@link #ALPHABET} is skipped
+		 * @return - the compressed message, made up of the characters in {@link #ALPHABET}, which may be longer than the message if it doesn't read like
+		 *         English
+		 */
+		static String compress(CharSequence message)
+			{
+				StringBuilder bits = new StringBuilder("1");
+				for (int i = 0; i < message.length(); i++)
+					{
+						int c = ALPHABET.indexOf(message.charAt(i));
+						if (c >= 0)
+							bits.append(CODES[c]);
+					}
+
+				String digits = new BigInteger(bits.toString(), 2).toString(ALPHABET.length());
+
+				StringBuilder compressed = new StringBuilder(digits.length());
+				for (int i = 0; i < digits.length(); i++)
+					compressed.append(ALPHABET.charAt(Character.digit(digits.charAt(i), ALPHABET.length())));
+
+				return compressed.toString();
+			}
+
+		/**
+		 * @param compressed
+		 *            - a message returned by {@link #compress(CharSequence)}
+		 * @return - the original message, or as much of it as makes sense if the compressed message was never compressed in the first place. The
+		 *         compressed message itself if it is longer than {@link #MAX_COMPRESSED}.
+		 */
+		static String decompress(CharSequence compressed)
+			{
+				if (compressed.length() > MAX_COMPRESSED)
+					return compressed.toString();
+
+				StringBuilder digits = new StringBuilder(compressed.length());
+				for (int i = 0; i < compressed.length(); i++)
+					{
+						int digit = ALPHABET.indexOf(compressed.charAt(i));
+						if (digit < 0)
+							break;
+						digits.append(Character.forDigit(digit, ALPHABET.length()));
+					}
+
+				if (digits.length() == 0)
+					return "";
+
+				String bits = new BigInteger(digits.toString(), ALPHABET.length()).toString(2);
+
+				// Skip the 1 that was put in front of the bits
+				StringBuilder message = new StringBuilder();
+				int node = 0;
+				for (int i = 1; i < bits.length(); i++)
+					{
+						node = bits.charAt(i) == '0' ? ZERO[node] : ONE[node];
+						if (node < 0)
+							{
+								message.append(ALPHABET.charAt(-(node + 1)));
+								node = 0;
+							}
+					}
+
+				return message.toString();
+			}
+
+		/**
+		 * Scores how much a message reads like English rather than random characters, which is how a message can be told apart from the gibberish read
+		 * from an image that never had one encoded into it.
+		 *
+		 * @param message
+		 *            - the message to score
+		 * @return - the average number of bits per character by which the message is more likely to be English than characters picked at random from
+		 *         {@link #ALPHABET}, above 0 for most English text and around -1 for random characters. Negative infinity if the message is empty or holds
+		 *         any other character.
+		 */
+		static double getEnglishScore(CharSequence message)
+			{
+				if (message.length() == 0)
+					return Double.NEGATIVE_INFINITY;
+
+				int total = 0;
+				for (int frequency : FREQUENCIES)
+					total += frequency;
+
+				double score = 0;
+				for (int i = 0; i < message.length(); i++)
+					{
+						int c = ALPHABET.indexOf(message.charAt(i));
+						if (c < 0)
+							return Double.NEGATIVE_INFINITY;
+
+						score += Math.log(((double) FREQUENCIES[c] * ALPHABET.length()) / total);
+					}
+
+				return score / (message.length() * Math.log(2));
+			}
+	}
@@ -0,0 +1,145 @@
+package encryption;
+
+/**
+ * The header at the start of a message laid out so that it can be read without searching for its end, as opposed to a message that starts with an 'x' (or
+ * a 'z' if it was compressed) and ends with the terminating character '{'.
+ * <p>
+ * The header takes up the first {@link #BLOCKS} 4*4 squares of the image, each holding one character of the message alphabet just like the message itself,
+ * so it looks no different to the rest of the image:
+ * <ul>
+ * <li>{@link #MARKER}</li>
+ * <li>{@link #VERSION}</li>
+ * <li>flags, {@link #COMPRESSED} if the message was compressed with {@link MessageCompressor}, every other bit is reserved and always 0</li>
+ * <li>the length of the message in characters, as {@link #LENGTH_DIGITS} digits of a base 27 number with the most significant digit first</li>
+ * <li>a check digit, the flags and the digits of the length added up mod 27</li>
+ * </ul>
+ * Each number is a digit (or digits) of {@link MessageCompressor#ALPHABET}. The check digit means that only around 1 in 700,000 images without a message
+ * start with something that reads as a header, rather than 1 in 11,000. The characters of the message follow straight after, with no terminating
+ * character, so a reader knows from the header alone which squares (and so which rows of the image) it needs.
+ */
+class MessageHeader
+	{
+		/**
+		 * The first character of a message with a header, messages without one start with an 'x' or a 'z'.
+		 */
+		static final char MARKER = 'h';
+
+		private static final int VERSION = 2;
+		private static final int COMPRESSED = 1;
+
+		private static final int LENGTH_DIGITS = 5;
+
+		/**
+		 * The number of 4*4 squares taken up by the header.
+		 */
+		static final int BLOCKS = 4 + LENGTH_DIGITS;
+
+		/**
+		 * The longest message a header can describe, 27^5 - 1 characters.
+		 */
+		static final int MAX_LENGTH = 14348906;
+
+		/**
+		 * The number of characters in the message, not counting the header.
+		 */
+		final int length;
+		final boolean compressed;
+
+		private MessageHeader(int length, boolean compressed)
+			{
+				this.length = length;
+				this.compressed = compressed;
+			}
+
+		/**
+		 * @return - the number of 4*4 squares taken up by the header and the message together
+		 */
+		int getBlocks()
+			{
+				return BLOCKS + length;
+			}
+
+		/**
+		 * Writes the characters of a header, the message itself is written from square {@link #BLOCKS} on.
+		 *
+		 * @param letters
+		 *            - the characters of the whole message, the first {@link #BLOCKS} of which are overwritten
+		 * @param length
+		 *            - the number of characters in the message, no more than {@link #MAX_LENGTH}
+		 * @param compressed
+		 *            - whether the message was compressed with {@link MessageCompressor}
+		 */
+		static void write(char[] letters, int length, boolean compressed)
+			{
+				if (length < 0 || length > MAX_LENGTH)
+					throw new IllegalArgumentException("A message with a header can't be " + length + " characters long");
+
+				int flags = compressed ? COMPRESSED : 0;
+				int check = flags;
+
+				letters[0] = MARKER;
+				letters[1] = MessageCompressor.ALPHABET.charAt(VERSION);
+				letters[2] = MessageCompressor.ALPHABET.charAt(flags);
+
+				for (int i = BLOCKS - 2; i >= BLOCKS - 1 - LENGTH_DIGITS; i--)
+					{
+						letters[i] = MessageCompressor.ALPHABET.charAt(length % 27);
+						check += length % 27;
+						length /= 27;
+					}
+
+				letters[BLOCKS - 1] = MessageCompressor.ALPHABET.charAt(check % 27);
+			}
+
+		/**
+		 * @param letters
+		 *            - the characters read from the first (at least) {@link #BLOCKS} 4*4 squares of an image
+		 * @return - the header, or null if the image doesn't start with a header this version can read, in which case it either holds a message without a
+		 *         header or no message at all
+		 */
+		static MessageHeader read(CharSequence letters)
+			{
+				if (letters.length() < BLOCKS || letters.charAt(0) != MARKER || MessageCompressor.ALPHABET.indexOf(letters.charAt(1)) != VERSION)
+					return null;
+
+				int flags = MessageCompressor.ALPHABET.indexOf(letters.charAt(2));
+				if (flags < 0 || (flags & ~COMPRESSED) != 0)
+					return null;
+
+				int length = 0, check = flags;
+				for (int i = BLOCKS - 1 - LENGTH_DIGITS; i < BLOCKS - 1; i++)
+					{
+						int digit = MessageCompressor.ALPHABET.indexOf(letters.charAt(i));
+						if (digit < 0)
+							return null;
+
+						length = (length * 27) + digit;
+						check += digit;
+					}
+
+				if (MessageCompressor.ALPHABET.indexOf(letters.charAt(BLOCKS - 1)) != check % 27)
+					return null;
+
+				// Only file names are ever compressed, and never into more than MAX_COMPRESSED characters
+				boolean compressed = (flags & COMPRESSED) != 0;
+				if (compressed && length > MessageCompressor.MAX_COMPRESSED)
+					return null;
+
+				return new MessageHeader(length, compressed);
+			}
+
+		/**
+		 * @param blocks
+		 *            - a number of 4*4 squares, counting from the first
+		 * @param blocksWide
+		 *            - the number of 4*4 squares that fit across the image
+		 * @return - the number of rows of pixels, from the top of the image, that hold those squares
+		 */
+		static int getRows(int blocks, int blocksWide)
+			{
+				if (blocksWide == 0)
+					return Integer.MAX_VALUE;
+
+				return (int) Math.min(Integer.MAX_VALUE, ((blocks + (long) blocksWide - 1) / blocksWide) * 4);
+			}
+	}
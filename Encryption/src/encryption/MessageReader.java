@@ -0,0 +1,141 @@
+package encryption;
+
+import java.io.IOException;
+
+/**
+ * Reads a message from an image that is read a band of rows at a time, only reading as many rows as the message needs.
+ * <p>
+ * A message with a {@link MessageHeader} says how long it is, so once the rows holding the header have been read only the rows holding the rest of the
+ * message are read. A message without one is read a whole band at a time until its terminating character is found.
+ */
+class MessageReader
+	{
+		private final Dictionary dictionary;
+
+		/**
+		 * The characters read so far, including the header or the character in front of the message.
+		 */
+		private final StringBuilder letters = new StringBuilder();
+
+		/**
+		 * The header of the message being read, null until it has been read or if the message doesn't have one.
+		 */
+		private MessageHeader header;
+
+		/**
+		 * The number of 4*4 squares read since this {@link MessageReader} was made.
+		 */
+		long blocksRead = 0;
+
+		/**
+		 * @param dictionary
+		 *            - the {@link Dictionary} of the {@link Network} the message was written with
+		 */
+		MessageReader(Dictionary dictionary)
+			{
+				this.dictionary = dictionary;
+			}
+
+		/**
+		 * Forgets the message being read, ready to read another.
+		 */
+		void reset()
+			{
+				letters.setLength(0);
+				header = null;
+			}
+
+		/**
+		 * Reads the message from the bands of an image.
+		 *
+		 * @param bands
+		 *            - the image, not yet read from
+		 * @param bandRows
+		 *            - the most rows to read at once, a multiple of 4
+		 * @return - the message, or gibberish if the image doesn't hold one
+		 * @throws IOException
+		 *             - if the image can not be read
+		 */
+		String read(ImageBands bands, int bandRows) throws IOException
+			{
+				reset();
+
+				boolean finished = false;
+				while (!finished && bands.nextRow < bands.height)
+					finished = read(Carrier.of(bands.read(getRows(bands, bandRows))));
+
+				return getMessage(finished);
+			}
+
+		/**
+		 * @param bands
+		 *            - the image being read
+		 * @param bandRows
+		 *            - the most rows to read at once
+		 * @return - the number of rows to read next, just those holding the header until it has been read and then just those holding the rest of the message
+		 */
+		int getRows(ImageBands bands, int bandRows)
+			{
+				int blocksWide = bands.width / 4;
+
+				int needed;
+				if (header != null)
+					needed = MessageHeader.getRows(header.getBlocks(), blocksWide);
+				else if (letters.length() < MessageHeader.BLOCKS && (letters.length() == 0 || letters.charAt(0) == MessageHeader.MARKER))
+					needed = MessageHeader.getRows(MessageHeader.BLOCKS, blocksWide);
+				else
+					return bandRows;
+
+				return Math.max(4, Math.min(bandRows, needed - bands.nextRow));
+			}
+
+		/**
+		 * Adds the characters held by every 4*4 square of an image (or the next band of an image) to the message, up until the end of the message.
+		 *
+		 * @return - true if the end of the message was found, in which case {@link #getMessage(boolean)} returns the whole message
+		 */
+		boolean read(Carrier carrier)
+			{
+				for (int y = 0; y < carrier.blocksHigh; y++)
+					for (int x = 0; x < carrier.blocksWide; x++)
+						{
+							// A message with a header says where it ends, so every square read is part of it
+							if (header != null && letters.length() == header.getBlocks())
+								return true;
+
+							char letter = dictionary.getLetter(carrier.readBlock(x, y));
+							blocksRead++;
+
+							// Everything after the terminating character is random data, so there is no need to read any further
+							if (header == null && letter == '{' && letters.length() > 1)
+								return true;
+
+							letters.append(letter);
+
+							if (letters.length() == MessageHeader.BLOCKS)
+								header = MessageHeader.read(letters);
+						}
+
+				return header != null && letters.length() == header.getBlocks();
+			}
+
+		/**
+		 * @param finished
+		 *            - whether the end of the message was found
+		 * @return - the message without the header or the character in front of it, decompressed if it was compressed. If the end of the message was never
+		 *         found, every character read after the first (as the image probably never had a message encoded into it), the same as
+		 *         {@link StegoCodec#extract(java.awt.image.BufferedImage)} returns.
+		 */
+		String getMessage(boolean finished)
+			{
+				if (!finished)
+					return letters.length() == 0 ? "" : letters.substring(1);
+				else if (header != null)
+					return header.compressed ? MessageCompressor.decompress(letters.subSequence(MessageHeader.BLOCKS, letters.length()))
+							: letters.substring(MessageHeader.BLOCKS);
+				else if (letters.charAt(0) == 'z')
+					return MessageCompressor.decompress(letters.subSequence(1, letters.length()));
+				else
+					return letters.substring(1);
+			}
+	}
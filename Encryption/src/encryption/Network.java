@@ -0,0 +1,410 @@
+package encryption;
+
+import java.util.Random;
+
+class Network
+	{
+		/**
+		 * One for each character we want to be able to recognise
+		 */
+		static final int NODES_PER_LEVEL = 28;
+		/**
+		 * The number of nodes in the first level that are set by the startingNodeStates, one for each pixel of a 4*4 square
+		 */
+		static final int STARTING_NODES = 16;
+		/**
+		 * The number of floats that were originally stored to represent a single Node, the weights are still generated in this order so that a seed
+		 * always builds the same network
+		 * <p>
+		 * { Node's {@link #GOAL}, Node's {@link #STATE}, weight of connection to node 0, weight of connection to node 1... }
+		 */
+		static final int DATA_PER_NODE = NODES_PER_LEVEL + 2;
+		/**
+		 * The number of levels that the {@link Network} has.
+		 */
+		static int LEVELS;
+
+		/**
+		 * The state that the node needs to reach in order to be triggered (give or take the {@link #LEEWAY})
+		 */
+		static final int GOAL = 0;
+		/**
+		 * The current state of the Node
+		 */
+		static final int STATE = 1;
+
+		/**
+		 * If a Node's state is within the range of (its goal +/- {@link Network#LEEWAY}) then it is triggered
+		 */
+		static float LEEWAY;
+
+		/**
+		 * The number of floats a caller has to provide to {@link #getCharacterIndex(int, float[])} to hold the states of the nodes while it works.
+		 */
+		static final int SCRATCH_SIZE = NODES_PER_LEVEL * 2;
+
+		/**
+		 * Scratch space for {@link #getLetter(int)}, so that callers that don't want to manage their own don't need to allocate any.
+		 */
+		private static final ThreadLocal<float[]> SCRATCH = ThreadLocal.withInitial(() -> new float[SCRATCH_SIZE]);
+
+		/**
+		 * The {@link #LEEWAY} and {@link #LEVELS} of this particular {@link Network}, these are fixed when it is built so that networks with different
+		 * values can be used at the same time.
+		 */
+		final float leeway;
+		final int levels;
+
+		/**
+		 * The seed the weights of this {@link Network} were drawn from.
+		 */
+		final int seed;
+
+		final Random r;
+
+		/**
+		 * float[(<i>level</i> * {@link #NODES_PER_LEVEL} + <i>node</i>) * {@link #NODES_PER_LEVEL} + <i>connected node</i>] == the weight of the connection
+		 * from a node to a node in the next level
+		 * <p>
+		 * All of the connections from one node are next to each other, followed by the connections from the next node in the level, so propagating from one
+		 * level to the next reads straight through the array.
+		 */
+		final float[] weights;
+
+		/**
+		 * float[<i>level</i> * {@link #NODES_PER_LEVEL} + <i>node</i>] == the absolute value of the node's goal, the state it needs to be triggered
+		 * itself
+		 * <p>
+		 * Only the size of a goal ever matters, so the absolute value is stored to save working it out for every node every time.
+		 */
+		final float[] goals;
+
+		/**
+		 * int with bit <i>i</i> set if node <i>i</i> in the first level fires even when it isn't set by the startingNodeStates, i.e. its goal is within the
+		 * leeway of 0.
+		 */
+		final int idleFiring;
+
+		/**
+		 * Runs many startingNodeStates through a network at once, see {@link #getCharacterIndices(int, int, byte[])}.
+		 */
+		interface Sweep
+			{
+				/**
+				 * @param n
+				 *            - the network to run the startingNodeStates through
+				 * @param firstPattern
+				 *            - the first of the startingNodeStates to run through the network
+				 * @param count
+				 *            - how many startingNodeStates to run through the network, counting up from firstPattern
+				 * @param indices
+				 *            - filled with the character index produced by each startingNodeStates, starting at index 0
+				 */
+				void getCharacterIndices(Network n, int firstPattern, int count, byte[] indices);
+			}
+
+		/**
+		 * Evaluates many startingNodeStates at once with the Vector API when the JVM has the jdk.incubator.vector module (and -Dvector=false hasn't been
+		 * given), otherwise null and every startingNodeStates is run through the network one at a time.
+		 */
+		private static final Sweep VECTOR_SWEEP = loadVectorSweep();
+
+		/**
+		 * Initialises a {@link Network} and sets the node weights to random values, using a known seed to ensure it is constructed identically each
+		 * time.
+		 * <p>
+		 * {@link Network#LEEWAY} and {@link Network#LEVELS} can be set by command line parameters (-Dleeway=<i>a float</i> & -Dlevels=<i>an
+		 * integer</i>)
+		 */
+		Network(int seed)
+			{
+				this(seed, LEEWAY, LEVELS);
+			}
+
+		/**
+		 * Initialises a {@link Network} with its own leeway and number of levels, ignoring {@link Network#LEEWAY} and {@link Network#LEVELS}.
+		 */
+		Network(int seed, float leeway, int levels)
+			{
+				this.seed = seed;
+				this.leeway = leeway;
+				this.levels = levels;
+
+				weights = new float[levels * NODES_PER_LEVEL * NODES_PER_LEVEL];
+				goals = new float[levels * NODES_PER_LEVEL];
+
+				// seed our random number generator to ensure we can rebuild the network
+				r = new Random(seed);
+
+				for (int x = 0; x < DATA_PER_NODE; x++)
+					for (int y = 0; y < NODES_PER_LEVEL; y++)
+						for (int z = 0; z < levels; z++)
+							if (x == GOAL)
+								goals[(z * NODES_PER_LEVEL) + y] = Math.abs(r.nextFloat() - 0.5f);
+							else if (x != STATE)
+								weights[(((z * NODES_PER_LEVEL) + y) * NODES_PER_LEVEL) + x - 2] = r.nextFloat() - 0.5f;
+
+				int idleFiring = 0;
+				for (int y = 0; y < NODES_PER_LEVEL; y++)
+					if (goals[y] < leeway)
+						idleFiring |= 1 << y;
+				this.idleFiring = idleFiring;
+			}
+
+		/**
+		 * For a 16 bit number (representing a 4*4 grid) feeds the information into the network and translates it into a letter of the alphabet or the
+		 * terminating character '{'
+		 * <p>
+		 * This is safe to call from many threads at once, and allocates nothing.
+		 *
+		 * @param pattern
+		 *            - bit <i>i</i> represents whether node <i>i</i> in the first level of the network will fire.
+		 * @return - an non-capital alphabet character, a space or "{" which is the termination character.
+		 */
+		char getLetter(int pattern)
+			{
+				/*
+				 * Get the character that we want to return ascii 'a' -> '{' = 97 -> 123
+				 */
+				int closestNodeNum = getCharacterIndex(pattern, SCRATCH.get());
+
+				if (closestNodeNum == NODES_PER_LEVEL - 1)
+					return ' ';
+				else
+					return (char) (closestNodeNum + 97);
+			}
+
+		/**
+		 * The same as {@link #getLetter(int)} but returns the number of the node in the final level of the network that represents the character, see
+		 * {@link Dictionary#getCharacterIndex(char)}.
+		 *
+		 * @param pattern
+		 *            - bit <i>i</i> represents whether node <i>i</i> in the first level of the network will fire.
+		 * @param scratch
+		 *            - at least {@link #SCRATCH_SIZE} floats that the states of the nodes are worked out in, owned by the caller so that many threads can use
+		 *            the same {@link Network}
+		 * @return - the number of the node in the final level that is closest to its goal
+		 */
+		int getCharacterIndex(int pattern, float[] scratch)
+			{
+				if (levels == 1)
+					return getClosestFirstLevelNode(pattern);
+
+				/*
+				 * Set up the starting nodes so only the relevant ones fire, a node that is set has its STATE == its GOAL which guarantees firing (as long as
+				 * there is any leeway), any other node fires if its goal is close enough to 0
+				 */
+				return getCharacterIndex(1, getStartingFiring(pattern), scratch);
+			}
+
+		/**
+		 * @param pattern
+		 *            - bit <i>i</i> represents whether node <i>i</i> in the first level of the network is set
+		 * @return - bit <i>i</i> set if node <i>i</i> in the first level fires
+		 */
+		int getStartingFiring(int pattern)
+			{
+				int firing = idleFiring & ~pattern;
+				if (0 < leeway)
+					firing |= pattern;
+
+				return firing;
+			}
+
+		/**
+		 * Runs the network from level z onwards, for when the nodes that fired in the level before are already known.
+		 *
+		 * @param z
+		 *            - the level to start at, at least 1
+		 * @param firing
+		 *            - bit <i>i</i> set if node <i>i</i> in level z - 1 fired
+		 * @param scratch
+		 *            - at least {@link #SCRATCH_SIZE} floats that the states of the nodes are worked out in
+		 * @return - the number of the node in the final level that is closest to its goal
+		 */
+		int getCharacterIndex(int z, int firing, float[] scratch)
+			{
+				// The states of one level are kept in one half of the scratch space while the states of the next level are added up in the other half
+				int current = 0;
+
+				/*
+				 * For each level (except the first), add up the weights of the connections from each node in the level above that fired, then check which of
+				 * the nodes in this level have fired
+				 */
+				for (; z < levels; z++)
+					{
+						int next = NODES_PER_LEVEL - current;
+						for (int x = next; x < next + NODES_PER_LEVEL; x++)
+							scratch[x] = 0;
+
+						// Nodes are added in order so the states are exactly the same as adding up the weights one node at a time
+						for (int y = 0; y < NODES_PER_LEVEL; y++)
+							if ((firing & (1 << y)) != 0)
+								{
+									int connections = (((z - 1) * NODES_PER_LEVEL) + y) * NODES_PER_LEVEL;
+									for (int x = 0; x < NODES_PER_LEVEL; x++)
+										scratch[next + x] += weights[connections + x];
+								}
+
+						current = next;
+
+						if (z < levels - 1)
+							firing = getFiring(z, scratch, current);
+					}
+
+				return getClosestFinalNode(scratch, current);
+			}
+
+		/**
+		 * @param z
+		 *            - the level the states are of
+		 * @param states
+		 *            - holds the state of each node in the level
+		 * @param offset
+		 *            - where the state of node 0 is in states
+		 * @return - bit <i>i</i> set if node <i>i</i> fires
+		 */
+		int getFiring(int z, float[] states, int offset)
+			{
+				int firing = 0;
+				for (int y = 0; y < NODES_PER_LEVEL; y++)
+					if (getNodeDifference(z, y, states[offset + y]) < leeway)
+						firing |= 1 << y;
+
+				return firing;
+			}
+
+		/**
+		 * Find which of the nodes in the final level is closest to its goal value.
+		 *
+		 * @param states
+		 *            - holds the state of each node in the final level
+		 * @param offset
+		 *            - where the state of node 0 is in states
+		 * @return - the number of the node closest to its goal, the lowest numbered one if there is a tie
+		 */
+		int getClosestFinalNode(float[] states, int offset)
+			{
+				int closestNodeNum = 0;
+				float closetsNodeValue = getNodeDifference(levels - 1, 0, states[offset]);
+
+				/*
+				 * for each node, check if its GOAL more closely matches its STATE than the previous best, if it does, replace closestNodeNum with the nodes
+				 * own index
+				 */
+				for (int i = 1; i < NODES_PER_LEVEL; i++)
+					{
+						float difference = getNodeDifference(levels - 1, i, states[offset + i]);
+						if (difference < closetsNodeValue)
+							{
+								closestNodeNum = i;
+								closetsNodeValue = difference;
+							}
+					}
+
+				return closestNodeNum;
+			}
+
+		/**
+		 * When the network only has a single level the startingNodeStates are read straight from it, a node that is set is exactly at its goal and the
+		 * others are as far from their goal as the goal is from 0.
+		 */
+		private int getClosestFirstLevelNode(int pattern)
+			{
+				int closestNodeNum = 0;
+				float closetsNodeValue = (pattern & 1) != 0 ? 0 : goals[0];
+
+				for (int i = 1; i < NODES_PER_LEVEL; i++)
+					{
+						float difference = (pattern & (1 << i)) != 0 ? 0 : goals[i];
+						if (difference < closetsNodeValue)
+							{
+								closestNodeNum = i;
+								closetsNodeValue = difference;
+							}
+					}
+
+				return closestNodeNum;
+			}
+
+		/**
+		 * Calculates how close a node's STATE is to its GOAL
+		 *
+		 * @param z
+		 *            the LEVEL that the node is in
+		 * @param y
+		 *            the number of the node
+		 * @param state
+		 *            the node's STATE
+		 * @return the absolute difference between the node's STATE and GOAL
+		 */
+		private float getNodeDifference(int z, int y, float state)
+			{
+				return Math.abs(goals[(z * NODES_PER_LEVEL) + y] - Math.abs(state));
+			}
+
+		/**
+		 * The same as {@link #getCharacterIndex(int, float[])} for a whole range of startingNodeStates, using the Vector API to run several through the
+		 * network at once where it is available. Without it, a sweep of every startingNodeStates is done in Gray code order by {@link GraySweep}. The
+		 * results are exactly the same whichever way they are worked out.
+		 *
+		 * @param firstPattern
+		 *            - the first of the startingNodeStates to run through the network
+		 * @param count
+		 *            - how many startingNodeStates to run through the network, counting up from firstPattern
+		 * @param indices
+		 *            - filled with the number of the node in the final level that is closest to its goal for each startingNodeStates, starting at index 0
+		 */
+		void getCharacterIndices(int firstPattern, int count, byte[] indices)
+			{
+				if (VECTOR_SWEEP != null && levels > 1)
+					VECTOR_SWEEP.getCharacterIndices(this, firstPattern, count, indices);
+				else if (firstPattern == 0 && count == 1 << STARTING_NODES)
+					GraySweep.getCharacterIndices(this, indices);
+				else
+					{
+						float[] scratch = SCRATCH.get();
+						for (int i = 0; i < count; i++)
+							indices[i] = (byte) getCharacterIndex(firstPattern + i, scratch);
+					}
+			}
+
+		/**
+		 * Passes every one of the 2^16 startingNodeStates through the network and counts how many produce each character.
+		 *
+		 * @return - int[<i>The number of the node in the final level that represents a character</i>] == the number of startingNodeStates that produce it
+		 */
+		int[] getCharFrequencies()
+			{
+				byte[] indices = new byte[1 << STARTING_NODES];
+				getCharacterIndices(0, indices.length, indices);
+
+				// set aside memory to record the frequency our network returns each character
+				int[] charFrequency = new int[NODES_PER_LEVEL];
+
+				// for each and every combination of startingNodeStates (2^16)
+				for (byte index : indices)
+					charFrequency[index]++;
+
+				return charFrequency;
+			}
+
+		/**
+		 * Loads {@link VectorSweep} by name, so that this class still works on a JVM that hasn't been given the jdk.incubator.vector module.
+		 */
+		private static Sweep loadVectorSweep()
+			{
+				if (!Boolean.parseBoolean(System.getProperty("vector", "true")))
+					return null;
+
+				try
+					{
+						return (Sweep) Class.forName("encryption.VectorSweep").getDeclaredConstructor().newInstance();
+					}
+				catch (Throwable e)
+					{
+						// Most likely a NoClassDefFoundError for the jdk.incubator.vector classes, run the network one startingNodeStates at a time instead
+						return null;
+					}
+			}
+	}
@@ -0,0 +1,309 @@
+package encryption;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterOutputStream;
+
+/**
+ * Hides any bytes at all in an image, rather than a message made up of the 28 characters a {@link Network} can represent.
+ * <p>
+ * Every pixel holds a bit in the least significant bit of each of its red, green and blue values (and optionally alpha), rather than a single bit in its
+ * blue value, so an image holds 3 (or 4) bits per pixel instead of 28 possible characters per 16 pixels. Pixels are used from left to right and top to
+ * bottom, the first {@link #HEADER_PIXELS} hold a header which always uses only the RGB values:
+ * <ul>
+ * <li>short - {@link #MAGIC}</li>
+ * <li>byte - {@link #VERSION}</li>
+ * <li>byte - flags, {@link #ALPHA} if the payload uses the alpha values as well and {@link #DEFLATE} if the payload was compressed</li>
+ * <li>int - the length of the payload in bytes, as it is stored in the image</li>
+ * </ul>
+ * followed by the payload itself. The header and payload are XORed with a stream of random numbers seeded with the seed of the {@link Network}, so they
+ * look as random as the bits in the rest of the image, which are filled with random data. Without the right seed the header doesn't match and nothing is
+ * read.
+ */
+class Payload
+	{
+		private static final int MAGIC = 0x5342; // "SB"
+		private static final int VERSION = 1;
+		private static final int ALPHA = 1;
+		private static final int DEFLATE = 2;
+
+		private static final int HEADER_SIZE = 8;
+
+		/**
+		 * The number of pixels taken up by the header, 64 bits at 3 bits per pixel with the last 2 bits spare.
+		 */
+		static final int HEADER_PIXELS = (HEADER_SIZE * 8 + 2) / 3;
+
+		private Payload()
+			{
+			}
+
+		/**
+		 * @return - the number of bytes of payload that fit in an image of the given size
+		 */
+		static long getCapacity(int width, int height, boolean alpha)
+			{
+				long pixels = ((long) width * height) - HEADER_PIXELS;
+				return Math.max(0, (pixels * (alpha ? 4 : 3)) / 8);
+			}
+
+		/**
+		 * Hides a payload in an image, overwriting any message or payload it already held, and fills the rest of the image with random data.
+		 *
+		 * @param carrier
+		 *            - the pixels of the image
+		 * @param payload
+		 *            - the bytes to hide, read as they are hidden
+		 * @param alpha
+		 *            - true to use the alpha values as well as RGB, the image must have an alpha channel
+		 * @param compress
+		 *            - true to compress the payload with Deflate as it is hidden, it is decompressed again when it is extracted
+		 * @param seed
+		 *            - the seed of the {@link Network}, which is needed to read the payload back
+		 * @return - the number of bytes of the payload hidden, before they were compressed
+		 * @throws IOException
+		 *             - if the payload can not be read
+		 * @throws IllegalArgumentException
+		 *             - if the payload doesn't fit in the image (which is left half written), or alpha is used for an image without an alpha channel
+		 */
+		static long embed(Carrier carrier, InputStream payload, boolean alpha, boolean compress, int seed) throws IOException
+			{
+				Deflater deflater = compress ? new Deflater(Deflater.BEST_COMPRESSION) : null;
+				try
+					{
+						long length = write(carrier, compress ? new DeflaterInputStream(payload, deflater) : payload, alpha, compress, seed);
+						return compress ? deflater.getBytesRead() : length;
+					}
+				finally
+					{
+						if (compress)
+							deflater.end();
+					}
+			}
+
+		/**
+		 * Hides the bytes of a payload as they are read, which have already been compressed if compressed is true.
+		 *
+		 * @return - the number of bytes hidden
+		 */
+		private static long write(Carrier carrier, InputStream payload, boolean alpha, boolean compressed, int seed) throws IOException
+			{
+				if (alpha && !carrier.hasAlpha)
+					throw new IllegalArgumentException("The image has no alpha channel");
+
+				long capacity = getCapacity(carrier.width, carrier.height, alpha);
+				if (capacity <= 0)
+					throw new IllegalArgumentException("The image is too small to hold a payload");
+
+				// The header is whitened first, but it isn't written until the length of the payload is known
+				SplittableRandom whitening = new SplittableRandom(seed);
+				byte[] headerMask = new byte[HEADER_SIZE];
+				for (int i = 0; i < HEADER_SIZE; i++)
+					headerMask[i] = (byte) whitening.nextInt();
+
+				Cursor cursor = new Cursor(carrier, HEADER_PIXELS, alpha ? 4 : 3);
+				byte[] buffer = new byte[64 * 1024];
+				long length = 0;
+
+				int read;
+				while ((read = payload.read(buffer)) >= 0)
+					{
+						if (length + read > capacity)
+							throw new IllegalArgumentException("The " + (compressed ? "compressed " : "") + "payload is bigger than the " + capacity
+									+ " bytes the image can hold");
+
+						for (int i = 0; i < read; i++)
+							cursor.writeByte(buffer[i] ^ whitening.nextInt());
+						length += read;
+					}
+
+				// Make the rest of the image look the same as the whitened payload
+				Random r = ThreadLocalRandom.current();
+				cursor.fill(r);
+
+				byte[] header = new byte[HEADER_SIZE];
+				header[0] = (byte) (MAGIC >>> 8);
+				header[1] = (byte) MAGIC;
+				header[2] = VERSION;
+				header[3] = (byte) ((alpha ? ALPHA : 0) | (compressed ? DEFLATE : 0));
+				header[4] = (byte) (length >>> 24);
+				header[5] = (byte) (length >>> 16);
+				header[6] = (byte) (length >>> 8);
+				header[7] = (byte) length;
+
+				Cursor headerCursor = new Cursor(carrier, 0, 3);
+				for (int i = 0; i < HEADER_SIZE; i++)
+					headerCursor.writeByte(header[i] ^ headerMask[i]);
+				headerCursor.pad(r);
+
+				return length;
+			}
+
+		/**
+		 * Reads the payload hidden in an image.
+		 *
+		 * @param carrier
+		 *            - the pixels of the image
+		 * @param payload
+		 *            - where to write the bytes of the payload
+		 * @param seed
+		 *            - the seed of the {@link Network} the payload was hidden with
+		 * @return - the number of bytes of the payload read, after they were decompressed
+		 * @throws IOException
+		 *             - if the image doesn't hold a payload (or it was hidden with a different seed), or the payload can not be written
+		 */
+		static long extract(Carrier carrier, OutputStream payload, int seed) throws IOException
+			{
+				if (carrier.width * (long) carrier.height <= HEADER_PIXELS)
+					throw new IOException("The image is too small to hold a payload");
+
+				SplittableRandom whitening = new SplittableRandom(seed);
+
+				Cursor headerCursor = new Cursor(carrier, 0, 3);
+				byte[] header = new byte[HEADER_SIZE];
+				for (int i = 0; i < HEADER_SIZE; i++)
+					header[i] = (byte) (headerCursor.readByte() ^ whitening.nextInt());
+
+				int magic = ((header[0] & 0xFF) << 8) | (header[1] & 0xFF);
+				boolean alpha = (header[3] & ALPHA) != 0;
+				long length = (((header[4] & 0xFF) << 24) | ((header[5] & 0xFF) << 16) | ((header[6] & 0xFF) << 8) | (header[7] & 0xFF)) & 0xFFFFFFFFL;
+
+				if (magic != MAGIC || header[2] != VERSION || (alpha && !carrier.hasAlpha) || length > getCapacity(carrier.width, carrier.height, alpha))
+					throw new IOException("The image doesn't hold a payload, or it was hidden with a different seed");
+
+				Inflater inflater = (header[3] & DEFLATE) != 0 ? new Inflater() : null;
+				OutputStream out = inflater != null ? new InflaterOutputStream(payload, inflater) : payload;
+				try
+					{
+						Cursor cursor = new Cursor(carrier, HEADER_PIXELS, alpha ? 4 : 3);
+						byte[] buffer = new byte[64 * 1024];
+						for (long done = 0; done < length;)
+							{
+								int count = (int) Math.min(buffer.length, length - done);
+								for (int i = 0; i < count; i++)
+									buffer[i] = (byte) (cursor.readByte() ^ whitening.nextInt());
+
+								out.write(buffer, 0, count);
+								done += count;
+							}
+
+						if (inflater == null)
+							return length;
+
+						// Finish rather than close, as the stream the payload is written to belongs to the caller
+						((InflaterOutputStream) out).finish();
+						if (!inflater.finished())
+							throw new IOException("The compressed payload ends early");
+
+						return inflater.getBytesWritten();
+					}
+				finally
+					{
+						if (inflater != null)
+							inflater.end();
+					}
+			}
+
+		/**
+		 * Steps through the bits of an image a pixel at a time, from left to right and then top to bottom, using the lowest bit of each of the first few
+		 * values of each pixel.
+		 */
+		private static class Cursor
+			{
+				private final Carrier carrier;
+				private final int channels;
+
+				private int x, y;
+
+				/**
+				 * The value within the current pixel that the next bit goes in, and the bits of the current pixel.
+				 */
+				private int channel = 0;
+				private int bits = 0;
+
+				private Cursor(Carrier carrier, int firstPixel, int channels)
+					{
+						this.carrier = carrier;
+						this.channels = channels;
+						x = firstPixel % carrier.width;
+						y = firstPixel / carrier.width;
+					}
+
+				private void writeByte(int value)
+					{
+						for (int bit = 7; bit >= 0; bit--)
+							writeBit((value >>> bit) & 1);
+					}
+
+				private int readByte()
+					{
+						int value = 0;
+						for (int bit = 0; bit < 8; bit++)
+							value = (value << 1) | readBit();
+
+						return value;
+					}
+
+				private void writeBit(int bit)
+					{
+						bits |= bit << channel;
+						if (++channel == channels)
+							{
+								carrier.writeChannelBits(x, y, bits, channels);
+								bits = 0;
+								channel = 0;
+								nextPixel();
+							}
+					}
+
+				private int readBit()
+					{
+						if (channel == 0)
+							bits = carrier.readChannelBits(x, y);
+
+						int bit = (bits >>> channel) & 1;
+						if (++channel == channels)
+							{
+								channel = 0;
+								nextPixel();
+							}
+
+						return bit;
+					}
+
+				private void nextPixel()
+					{
+						if (++x == carrier.width)
+							{
+								x = 0;
+								y++;
+							}
+					}
+
+				/**
+				 * Fills the rest of the current pixel with random bits.
+				 */
+				private void pad(Random r)
+					{
+						while (channel != 0)
+							writeBit(r.nextInt(2));
+					}
+
+				/**
+				 * Fills every pixel from here to the end of the image with random bits.
+				 */
+				private void fill(Random r)
+					{
+						pad(r);
+						for (; y < carrier.height; nextPixel())
+							carrier.writeChannelBits(x, y, r.nextInt(1 << channels), channels);
+					}
+			}
+	}
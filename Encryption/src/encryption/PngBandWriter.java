@@ -0,0 +1,547 @@
+package encryption;
+
+import java.awt.image.BufferedImage;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Writes a PNG file a band of rows at a time, so that the whole image never has to be in memory at once.
+ * <p>
+ * The image is saved as 8 bit RGB, or RGBA if the bands have an alpha channel, the same as {@link javax.imageio.ImageIO} saves the images a {@link Carrier}
+ * works with. By default each row is filtered with whichever PNG filter leaves the smallest values, the same heuristic the ImageIO PNG writer uses.
+ * <p>
+ * Each band is cut into segments of around {@link #SEGMENT_SIZE} bytes, which are filtered and deflated on separate threads the same way pigz works. The
+ * threads are those of the {@link ForkJoinPool#commonPool()}, which every writer shares, so writing many images at once never starts more threads. Every
+ * segment is compressed on its own and ended with a sync flush, which leaves the deflate stream on a byte boundary with nothing carried over into the next
+ * segment, so the segments can be written one after another as a single zlib stream. The Adler-32 checksum at the end of the stream is put together from
+ * the checksums of each segment. Segments are written in order through a {@link FileChannel} as they are finished.
+ */
+class PngBandWriter implements Closeable
+	{
+		/**
+		 * Which PNG filter is applied to each row, in the order of the filter types in the PNG specification, or ADAPTIVE to pick the best for each row.
+		 */
+		enum Filter
+			{
+				NONE, SUB, UP, AVERAGE, PAETH, ADAPTIVE
+			}
+
+		/**
+		 * The Deflate level of every PNG written without a level of its own, from 0 (stored) to 9 (smallest), or {@link Deflater#DEFAULT_COMPRESSION} (set
+		 * with -Dpnglevel=<i>level</i>). The random bits in a swapped image make the higher levels several times slower for little gain, level 1 is as fast
+		 * as the ImageIO PNG writer on an image of nothing but noise and faster on a photograph, while still making smaller files.
+		 */
+		static int LEVEL = 1;
+
+		/**
+		 * The filter used by every PNG written without a filter of its own (set with -Dpngfilter=<i>none, sub, up, average, paeth or adaptive</i>).
+		 */
+		static Filter FILTER = Filter.ADAPTIVE;
+
+		/**
+		 * The most segments of each PNG written without a number of its own that are compressed at once (set with -Dpngthreads=<i>threads</i>).
+		 */
+		static int THREADS = Runtime.getRuntime().availableProcessors();
+
+		/**
+		 * The number of bytes of filtered rows deflated as one segment, big enough that cutting the stream up costs almost nothing in compression.
+		 */
+		static final int SEGMENT_SIZE = 512 * 1024;
+
+		private static final long SIGNATURE = 0x89504E470D0A1A0AL;
+		private static final int IHDR = 0x49484452, IDAT = 0x49444154, IEND = 0x49454E44;
+
+		private final FileChannel channel;
+		private final ByteBuffer buffer = ByteBuffer.allocate(1024 * 1024);
+		private final int width, height;
+		private final int level;
+		private final Filter filter;
+		private final int threads;
+		private final CRC32 crc = new CRC32();
+
+		/**
+		 * The bytes per pixel, 0 until the first band has been written.
+		 */
+		private int channels = 0;
+
+		/**
+		 * The last unfiltered row written, with a spare pixel of 0s to the left, which the first row of the next band is filtered against.
+		 */
+		private byte[] lastRow;
+
+		/**
+		 * The Adler-32 checksum of every filtered row written so far.
+		 */
+		private long adler = 1;
+
+		private int rowsWritten = 0;
+
+		/**
+		 * Writes a PNG with the {@link #LEVEL}, {@link #FILTER} and {@link #THREADS} set for every PNG.
+		 *
+		 * @param file
+		 *            - the file to save the image to
+		 * @param width
+		 *            - the width of the whole image
+		 * @param height
+		 *            - the height of the whole image, the image is finished once this many rows have been written
+		 * @throws IOException
+		 *             - if the file can not be written
+		 */
+		PngBandWriter(File file, int width, int height) throws IOException
+			{
+				this(file, width, height, LEVEL, FILTER, THREADS);
+			}
+
+		/**
+		 * @param file
+		 *            - the file to save the image to
+		 * @param width
+		 *            - the width of the whole image
+		 * @param height
+		 *            - the height of the whole image, the image is finished once this many rows have been written
+		 * @param level
+		 *            - the Deflate level, from 0 to 9 or {@link Deflater#DEFAULT_COMPRESSION}
+		 * @param filter
+		 *            - the filter applied to each row
+		 * @param threads
+		 *            - the most segments to compress at once on the shared pool, 1 to compress them all on the thread that writes each band
+		 * @throws IOException
+		 *             - if the file can not be written
+		 */
+		PngBandWriter(File file, int width, int height, int level, Filter filter, int threads) throws IOException
+			{
+				if (level < Deflater.DEFAULT_COMPRESSION || level > Deflater.BEST_COMPRESSION)
+					throw new IllegalArgumentException("Not a Deflate level: " + level);
+
+				this.channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+				this.width = width;
+				this.height = height;
+				this.level = level;
+				this.filter = filter;
+				this.threads = Math.max(1, threads);
+			}
+
+		/**
+		 * Adds the next band of rows to the image.
+		 *
+		 * @param band
+		 *            - the rows to write, they must be as wide as the image
+		 * @throws IOException
+		 *             - if the file can not be written
+		 */
+		void write(BufferedImage band) throws IOException
+			{
+				if (channels == 0)
+					writeHeader(band.getColorModel().hasAlpha() ? 4 : 3);
+
+				int rows = band.getHeight();
+				int rowsPerSegment = Math.max(1, SEGMENT_SIZE / (width * channels + 1));
+				List<Future<Segment>> segments = new ArrayList<Future<Segment>>();
+
+				try
+					{
+						for (int y = 0; y < rows; y += rowsPerSegment)
+							{
+								final int firstRow = y, endRow = Math.min(rows, y + rowsPerSegment);
+								final boolean first = rowsWritten + firstRow == 0, last = rowsWritten + endRow == height;
+
+								// The first segment is filtered against the last row of the band before, the rest against the row above them in this band
+								final byte[] rowAbove = firstRow == 0 ? lastRow : null;
+
+								if (threads == 1 || rows <= rowsPerSegment)
+									writeSegment(compress(band, firstRow, endRow, rowAbove, first, last));
+								else
+									{
+										// Only so many segments are compressed at once, the oldest is written before another is started
+										if (segments.size() == threads)
+											writeSegment(segments.remove(0).get());
+										segments.add(ForkJoinPool.commonPool().submit(() -> compress(band, firstRow, endRow, rowAbove, first, last)));
+									}
+							}
+
+						for (Future<Segment> segment : segments)
+							writeSegment(segment.get());
+					}
+				catch (InterruptedException e)
+					{
+						throw (IOException) new InterruptedIOException("Interrupted while compressing the image").initCause(e);
+					}
+				catch (ExecutionException e)
+					{
+						if (e.getCause() instanceof RuntimeException)
+							throw (RuntimeException) e.getCause();
+						throw new IOException("Could not compress the image", e.getCause());
+					}
+				finally
+					{
+						for (Future<Segment> segment : segments)
+							segment.cancel(true);
+					}
+
+				// Every segment is finished with the band, so its last row can be kept for the next band
+				byte[] row = new byte[(width + 1) * channels];
+				readRow(band, rows - 1, row, new int[width], new byte[width * channels]);
+				lastRow = row;
+				rowsWritten += rows;
+			}
+
+		/**
+		 * Finishes the image, which must have had every row written to it by now.
+		 */
+		@Override
+		public void close() throws IOException
+			{
+				try
+					{
+						if (rowsWritten != height)
+							throw new IOException("Only " + rowsWritten + " of " + height + " rows were written");
+
+						writeChunk(IEND, new byte[0], 0);
+						flush();
+					}
+				finally
+					{
+						channel.close();
+					}
+			}
+
+		private void writeHeader(int channels) throws IOException
+			{
+				this.channels = channels;
+				lastRow = new byte[(width + 1) * channels];
+
+				buffer.putLong(SIGNATURE);
+
+				byte[] header = new byte[13];
+				header[0] = (byte) (width >>> 24);
+				header[1] = (byte) (width >>> 16);
+				header[2] = (byte) (width >>> 8);
+				header[3] = (byte) width;
+				header[4] = (byte) (height >>> 24);
+				header[5] = (byte) (height >>> 16);
+				header[6] = (byte) (height >>> 8);
+				header[7] = (byte) height;
+				// 8 bits per sample, RGB or RGBA, deflate compression, adaptive filtering, no interlacing
+				header[8] = 8;
+				header[9] = (byte) (channels == 4 ? 6 : 2);
+				writeChunk(IHDR, header, header.length);
+			}
+
+		/**
+		 * Filters and deflates some of the rows of a band, which is safe to do on any thread as the band is only read.
+		 *
+		 * @param firstRow
+		 *            - the first row of the band in the segment
+		 * @param endRow
+		 *            - the row after the last row of the band in the segment
+		 * @param rowAbove
+		 *            - the unfiltered row above the first row, or null to read it from the band
+		 * @param first
+		 *            - true if this is the first segment of the image, which starts with the zlib header
+		 * @param last
+		 *            - true if this is the last segment of the image, which finishes the deflate stream and leaves 4 bytes for the Adler-32 checksum of the
+		 *            whole stream
+		 */
+		private Segment compress(BufferedImage band, int firstRow, int endRow, byte[] rowAbove, boolean first, boolean last)
+			{
+				int[] pixels = new int[width];
+				byte[] bytes = new byte[width * channels];
+
+				// The unfiltered row being filtered and the row above it, each with a spare pixel of 0s to the left so no filter needs a special case for
+				// the first pixel
+				byte[] row = new byte[(width + 1) * channels];
+				byte[] previousRow = rowAbove;
+				if (previousRow == null)
+					{
+						previousRow = new byte[row.length];
+						readRow(band, firstRow - 1, previousRow, pixels, bytes);
+					}
+
+				// The filtered version of the row is built in filtered, one row for each filter
+				byte[][] filtered = new byte[5][row.length];
+
+				int filteredLength = row.length - channels + 1;
+				byte[] raw = new byte[(endRow - firstRow) * filteredLength];
+				for (int y = firstRow; y < endRow; y++)
+					{
+						readRow(band, y, row, pixels, bytes);
+						System.arraycopy(filter(row, previousRow, filtered), channels - 1, raw, (y - firstRow) * filteredLength, filteredLength);
+
+						byte[] swap = previousRow;
+						previousRow = row;
+						row = swap;
+					}
+
+				Segment segment = new Segment();
+				Adler32 checksum = new Adler32();
+				checksum.update(raw);
+				segment.adler = checksum.getValue();
+				segment.rawLength = raw.length;
+
+				byte[] data = new byte[raw.length + (raw.length >>> 8) + 64];
+				int length = 0;
+				if (first)
+					{
+						// CMF is deflate with a 32K window, FLG holds the level and makes the two bytes a multiple of 31
+						int flags = (level == Deflater.DEFAULT_COMPRESSION || level == 6 ? 2 : level < 2 ? 0 : level < 6 ? 1 : 3) << 6;
+						flags += 31 - (((0x78 << 8) | flags) % 31);
+						data[length++] = 0x78;
+						data[length++] = (byte) flags;
+					}
+
+				Deflater deflater = new Deflater(level, true);
+				try
+					{
+						deflater.setInput(raw);
+						if (last)
+							deflater.finish();
+
+						while (true)
+							{
+								if (length == data.length)
+									data = Arrays.copyOf(data, data.length * 2);
+
+								int space = data.length - length;
+								int compressed = deflater.deflate(data, length, space, last ? Deflater.NO_FLUSH : Deflater.SYNC_FLUSH);
+								length += compressed;
+
+								// A sync flush is only done once it stops filling the space it is given
+								if (last ? deflater.finished() : compressed < space)
+									break;
+							}
+					}
+				finally
+					{
+						deflater.end();
+					}
+
+				if (last)
+					{
+						data = Arrays.copyOf(data, length + 4);
+						length += 4;
+					}
+
+				segment.data = data;
+				segment.length = length;
+				segment.last = last;
+				return segment;
+			}
+
+		/**
+		 * Writes a compressed segment as an IDAT chunk, adding the checksum of the whole stream to the end of the last one.
+		 */
+		private void writeSegment(Segment segment) throws IOException
+			{
+				adler = combine(adler, segment.adler, segment.rawLength);
+
+				if (segment.last)
+					{
+						segment.data[segment.length - 4] = (byte) (adler >>> 24);
+						segment.data[segment.length - 3] = (byte) (adler >>> 16);
+						segment.data[segment.length - 2] = (byte) (adler >>> 8);
+						segment.data[segment.length - 1] = (byte) adler;
+					}
+
+				writeChunk(IDAT, segment.data, segment.length);
+			}
+
+		/**
+		 * Reads a row of a band into the bytes of a PNG row, after the spare pixel at the start.
+		 */
+		private void readRow(BufferedImage band, int y, byte[] row, int[] pixels, byte[] bytes)
+			{
+				int type = band.getType();
+				if (type == BufferedImage.TYPE_3BYTE_BGR || type == BufferedImage.TYPE_4BYTE_ABGR)
+					{
+						// The raster hands back the bytes of each pixel in the order of its bands, which is RGB(A) for these images
+						band.getRaster().getDataElements(0, y, width, 1, bytes);
+						System.arraycopy(bytes, 0, row, channels, bytes.length);
+					}
+				else
+					{
+						if (type == BufferedImage.TYPE_INT_RGB || type == BufferedImage.TYPE_INT_ARGB)
+							band.getRaster().getDataElements(0, y, width, 1, pixels);
+						else
+							band.getRGB(0, y, width, 1, pixels, 0, width);
+
+						for (int x = 0, i = channels; x < width; x++, i += channels)
+							{
+								int pixel = pixels[x];
+								row[i] = (byte) (pixel >>> 16);
+								row[i + 1] = (byte) (pixel >>> 8);
+								row[i + 2] = (byte) pixel;
+								if (channels == 4)
+									row[i + 3] = (byte) (pixel >>> 24);
+							}
+					}
+			}
+
+		/**
+		 * Applies the {@link #filter} to a row, each filtered row starting with the filter type just before the first pixel.
+		 *
+		 * @return - the filtered row, which for {@link Filter#ADAPTIVE} is the one whose bytes add up to the least (as signed values), which tends to
+		 *         compress the best
+		 */
+		private byte[] filter(byte[] row, byte[] previousRow, byte[][] filtered)
+			{
+				byte[] none = filtered[0], sub = filtered[1], up = filtered[2], average = filtered[3], paeth = filtered[4];
+				int best;
+
+				switch (filter)
+					{
+						case NONE:
+							System.arraycopy(row, channels, none, channels, row.length - channels);
+							best = 0;
+							break;
+						case SUB:
+							for (int i = channels; i < row.length; i++)
+								sub[i] = (byte) (row[i] - row[i - channels]);
+							best = 1;
+							break;
+						case UP:
+							for (int i = channels; i < row.length; i++)
+								up[i] = (byte) (row[i] - previousRow[i]);
+							best = 2;
+							break;
+						case AVERAGE:
+							for (int i = channels; i < row.length; i++)
+								average[i] = (byte) ((row[i] & 0xFF) - (((row[i - channels] & 0xFF) + (previousRow[i] & 0xFF)) >>> 1));
+							best = 3;
+							break;
+						case PAETH:
+							for (int i = channels; i < row.length; i++)
+								paeth[i] = (byte) ((row[i] & 0xFF) - paeth(row[i - channels] & 0xFF, previousRow[i] & 0xFF, previousRow[i - channels] & 0xFF));
+							best = 4;
+							break;
+						default:
+							long noneSum = 0, subSum = 0, upSum = 0, averageSum = 0, paethSum = 0;
+
+							// All five filters at once, so each byte of the row and the row above is only read once
+							for (int i = channels; i < row.length; i++)
+								{
+									int value = row[i] & 0xFF, left = row[i - channels] & 0xFF, above = previousRow[i] & 0xFF;
+
+									noneSum += Math.abs(none[i] = row[i]);
+									subSum += Math.abs(sub[i] = (byte) (value - left));
+									upSum += Math.abs(up[i] = (byte) (value - above));
+									averageSum += Math.abs(average[i] = (byte) (value - ((left + above) >>> 1)));
+									paethSum += Math.abs(paeth[i] = (byte) (value - paeth(left, above, previousRow[i - channels] & 0xFF)));
+								}
+
+							long[] sums = { noneSum, subSum, upSum, averageSum, paethSum };
+							best = 0;
+							for (int filter = 1; filter < sums.length; filter++)
+								if (sums[filter] < sums[best])
+									best = filter;
+					}
+
+				filtered[best][channels - 1] = (byte) best;
+				return filtered[best];
+			}
+
+		/**
+		 * The Paeth predictor from the PNG specification, whichever of the pixels to the left, above and above left is closest to left + above - above left.
+		 */
+		static int paeth(int left, int above, int aboveLeft)
+			{
+				// How far the estimate is from each pixel, with the estimate worked out in each
+				int toLeft = Math.abs(above - aboveLeft);
+				int toAbove = Math.abs(left - aboveLeft);
+				int toAboveLeft = Math.abs(left + above - aboveLeft - aboveLeft);
+
+				int closest = toAbove <= toAboveLeft ? above : aboveLeft;
+				return toLeft <= toAbove && toLeft <= toAboveLeft ? left : closest;
+			}
+
+		/**
+		 * The Adler-32 checksum of two pieces of data one after the other, from the checksum of each, the same as adler32_combine() in zlib.
+		 *
+		 * @param length
+		 *            - the length of the second piece of data
+		 */
+		static long combine(long adler1, long adler2, long length)
+			{
+				final int base = 65521;
+				long remainder = length % base;
+				long sum1 = adler1 & 0xFFFF;
+				long sum2 = (remainder * sum1) % base;
+				sum1 += (adler2 & 0xFFFF) + base - 1;
+				sum2 += ((adler1 >>> 16) & 0xFFFF) + ((adler2 >>> 16) & 0xFFFF) + base - remainder;
+
+				if (sum1 >= base)
+					sum1 -= base;
+				if (sum1 >= base)
+					sum1 -= base;
+				if (sum2 >= (long) base << 1)
+					sum2 -= (long) base << 1;
+				if (sum2 >= base)
+					sum2 -= base;
+
+				return sum1 | (sum2 << 16);
+			}
+
+		private void writeChunk(int type, byte[] data, int length) throws IOException
+			{
+				crc.reset();
+				crc.update(type >>> 24);
+				crc.update(type >>> 16);
+				crc.update(type >>> 8);
+				crc.update(type);
+				crc.update(data, 0, length);
+
+				if (buffer.remaining() < 8)
+					flush();
+				buffer.putInt(length);
+				buffer.putInt(type);
+
+				// Big chunks are written straight from their own array rather than copied into the buffer first
+				if (length > buffer.remaining())
+					{
+						flush();
+						ByteBuffer chunk = ByteBuffer.wrap(data, 0, length);
+						while (chunk.hasRemaining())
+							channel.write(chunk);
+					}
+				else
+					buffer.put(data, 0, length);
+
+				if (buffer.remaining() < 4)
+					flush();
+				buffer.putInt((int) crc.getValue());
+			}
+
+		private void flush() throws IOException
+			{
+				buffer.flip();
+				while (buffer.hasRemaining())
+					channel.write(buffer);
+				buffer.clear();
+			}
+
+		/**
+		 * The compressed data of some of the rows of an image.
+		 */
+		private static class Segment
+			{
+				byte[] data;
+				int length;
+				long adler;
+				int rawLength;
+				boolean last;
+			}
+	}
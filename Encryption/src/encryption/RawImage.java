@@ -0,0 +1,312 @@
+package encryption;
+
+import java.awt.image.BufferedImage;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * An image stored as its raw pixel values, which can be worked on in place through memory mapped files rather than being decoded into a
+ * {@link BufferedImage} and encoded again after every step. An image bigger than the heap (or than 2 GB, the most a single buffer can map) costs nothing
+ * but the reads and writes of the pages of the file that are actually touched.
+ * <p>
+ * The file starts with a header of {@link #HEADER_SIZE} bytes:
+ * <ul>
+ * <li>int - {@link #MAGIC}</li>
+ * <li>byte - {@link #VERSION}</li>
+ * <li>byte - the number of values per pixel, 3 for RGB or 4 for RGBA</li>
+ * <li>short - spare, always 0</li>
+ * <li>int - the width of the image</li>
+ * <li>int - the height of the image</li>
+ * </ul>
+ * followed by the rows of the image from the top down, each pixel's values stored in a byte each in the order red, green, blue (and alpha), the same as the
+ * unfiltered rows of a PNG.
+ */
+class RawImage implements Closeable
+	{
+		static final int MAGIC = 0x53544752; // "STGR"
+		private static final int VERSION = 1;
+
+		static final int HEADER_SIZE = 16;
+
+		/**
+		 * The most bytes mapped by each of the buffers the file is split between, only ever made smaller to split a small image between several.
+		 */
+		static long SEGMENT_SIZE = 1L << 30;
+
+		final int width, height;
+
+		/**
+		 * The number of values per pixel, 3 or 4.
+		 */
+		final int channels;
+
+		/**
+		 * The file is mapped a number of rows at a time, always a multiple of 4 so that no 4*4 square is split between two buffers.
+		 */
+		final int segmentRows;
+		final MappedByteBuffer[] segments;
+
+		private final FileChannel channel;
+
+		private RawImage(FileChannel channel, boolean writable, int width, int height, int channels) throws IOException
+			{
+				this.channel = channel;
+				this.width = width;
+				this.height = height;
+				this.channels = channels;
+
+				long rowBytes = (long) width * channels;
+				if (rowBytes * 4 > Integer.MAX_VALUE)
+					throw new IOException("The image is too wide to map, " + width + " pixels");
+
+				long rows = Math.max(4, SEGMENT_SIZE / Math.max(rowBytes, 1));
+				segmentRows = (int) Math.min(rows - (rows % 4), Integer.MAX_VALUE - 3);
+
+				segments = new MappedByteBuffer[(int) ((height + (long) segmentRows - 1) / segmentRows)];
+				for (int i = 0; i < segments.length; i++)
+					{
+						long firstRow = (long) i * segmentRows;
+						long size = Math.min(segmentRows, height - firstRow) * rowBytes;
+						segments[i] = channel.map(writable ? FileChannel.MapMode.READ_WRITE : FileChannel.MapMode.READ_ONLY, HEADER_SIZE + (firstRow * rowBytes),
+								size);
+					}
+			}
+
+		/**
+		 * @return - true if the file starts with {@link #MAGIC}
+		 */
+		static boolean isRaw(File file)
+			{
+				try (DataInputStream in = new DataInputStream(new FileInputStream(file)))
+					{
+						return in.readInt() == MAGIC;
+					}
+				catch (IOException e)
+					{
+						return false;
+					}
+			}
+
+		/**
+		 * Creates a new file holding an image with every value 0.
+		 *
+		 * @param channels
+		 *            - 3 for RGB or 4 for RGBA
+		 * @throws IOException
+		 *             - if the file already exists or can not be written
+		 */
+		static RawImage create(File file, int width, int height, int channels) throws IOException
+			{
+				if (width < 0 || height < 0 || (channels != 3 && channels != 4))
+					throw new IllegalArgumentException("Can not store a " + width + "*" + height + " image with " + channels + " values per pixel");
+
+				FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+				try
+					{
+						ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+						header.putInt(MAGIC).put((byte) VERSION).put((byte) channels).putShort((short) 0).putInt(width).putInt(height).flip();
+						while (header.hasRemaining())
+							channel.write(header);
+
+						return new RawImage(channel, true, width, height, channels);
+					}
+				catch (IOException | RuntimeException e)
+					{
+						channel.close();
+						throw e;
+					}
+			}
+
+		/**
+		 * @param writable
+		 *            - false to only read the image, changing it then throws a {@link java.nio.ReadOnlyBufferException}
+		 * @throws IOException
+		 *             - if the file can not be read or isn't a raw image
+		 */
+		static RawImage open(File file, boolean writable) throws IOException
+			{
+				FileChannel channel = writable ? FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE) : FileChannel.open(file
+						.toPath(), StandardOpenOption.READ);
+				try
+					{
+						ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+						while (header.hasRemaining() && channel.read(header) >= 0)
+							;
+						header.flip();
+
+						if (header.remaining() < HEADER_SIZE || header.getInt() != MAGIC)
+							throw new IOException("Not a raw image: " + file);
+						if (header.get() != VERSION)
+							throw new IOException("Unknown version of raw image: " + file);
+
+						int channels = header.get();
+						header.getShort();
+						int width = header.getInt(), height = header.getInt();
+
+						if ((channels != 3 && channels != 4) || width < 0 || height < 0
+								|| channel.size() < HEADER_SIZE + ((long) width * height * channels))
+							throw new IOException("Corrupt raw image: " + file);
+
+						return new RawImage(channel, writable, width, height, channels);
+					}
+				catch (IOException | RuntimeException e)
+					{
+						channel.close();
+						throw e;
+					}
+			}
+
+		/**
+		 * Copies the values of a row of pixels, as red, green, blue (and alpha).
+		 */
+		void readRow(int y, byte[] row)
+			{
+				segments[y / segmentRows].get((y % segmentRows) * width * channels, row, 0, width * channels);
+			}
+
+		/**
+		 * Replaces the values of a row of pixels, as red, green, blue (and alpha).
+		 */
+		void writeRow(int y, byte[] row)
+			{
+				segments[y / segmentRows].put((y % segmentRows) * width * channels, row, 0, width * channels);
+			}
+
+		@Override
+		public void close() throws IOException
+			{
+				// The buffers stay mapped until they are garbage collected, but their changes are already in the page cache, which the operating system writes
+				// out to the file in its own time
+				channel.close();
+			}
+
+		/**
+		 * Converts an image into a raw image, one band of rows at a time so that the image never has to fit in memory.
+		 *
+		 * @param image
+		 *            - an image in any format {@link javax.imageio.ImageIO} can read
+		 * @param raw
+		 *            - the raw image to create, which must not already exist
+		 * @param bandMemory
+		 *            - roughly how many bytes each band of the image should take up while it is converted
+		 * @throws IOException
+		 *             - if the image can not be read or the raw image written
+		 */
+		static void fromImage(File image, File raw, long bandMemory) throws IOException
+			{
+				try (ImageBands bands = ImageBands.open(image))
+					{
+						int bandRows = bands.getBandRows(bandMemory);
+						RawImage out = null;
+						try
+							{
+								byte[] row = null;
+								int[] pixels = new int[bands.width];
+
+								while (bands.nextRow < bands.height)
+									{
+										int firstRow = bands.nextRow;
+										BufferedImage band = bands.read(bandRows);
+
+										// The first band says whether the image has an alpha channel
+										if (out == null)
+											{
+												out = create(raw, bands.width, bands.height, band.getColorModel().hasAlpha() ? 4 : 3);
+												row = new byte[bands.width * out.channels];
+											}
+
+										for (int y = 0; y < band.getHeight(); y++)
+											{
+												readRow(band, y, row, pixels, out.channels);
+												out.writeRow(firstRow + y, row);
+											}
+									}
+
+								if (out == null)
+									out = create(raw, bands.width, bands.height, 3);
+							}
+						catch (IOException | RuntimeException e)
+							{
+								if (out != null)
+									{
+										out.close();
+										out = null;
+										raw.delete();
+									}
+								throw e;
+							}
+						finally
+							{
+								if (out != null)
+									out.close();
+							}
+					}
+			}
+
+		/**
+		 * Converts a raw image into a PNG file, one band of rows at a time.
+		 *
+		 * @param raw
+		 *            - the raw image to read
+		 * @param png
+		 *            - where to write the PNG file, which is overwritten if it already exists
+		 * @param bandMemory
+		 *            - roughly how many bytes each band of the image should take up while it is converted
+		 * @throws IOException
+		 *             - if the raw image can not be read or the PNG file written
+		 */
+		static void toPng(File raw, File png, long bandMemory) throws IOException
+			{
+				try (RawImage in = open(raw, false); PngBandWriter out = new PngBandWriter(png, in.width, in.height))
+					{
+						int bandRows = (int) Math.max(1, Math.min(in.height, bandMemory / Math.max(1L, (long) in.width * in.channels)));
+						byte[] row = new byte[in.width * in.channels];
+
+						for (int firstRow = 0; firstRow < in.height; firstRow += bandRows)
+							{
+								int rows = Math.min(bandRows, in.height - firstRow);
+
+								// The rasters of these images take the values of each pixel in the order RGB(A), the same as the raw image
+								BufferedImage band = new BufferedImage(in.width, rows, in.channels == 4 ? BufferedImage.TYPE_4BYTE_ABGR
+										: BufferedImage.TYPE_3BYTE_BGR);
+								for (int y = 0; y < rows; y++)
+									{
+										in.readRow(firstRow + y, row);
+										band.getRaster().setDataElements(0, y, in.width, 1, row);
+									}
+
+								out.write(band);
+							}
+					}
+			}
+
+		/**
+		 * Reads a row of a band as red, green, blue (and alpha) values.
+		 */
+		private static void readRow(BufferedImage band, int y, byte[] row, int[] pixels, int channels)
+			{
+				int type = band.getType();
+				if (type == BufferedImage.TYPE_3BYTE_BGR || type == BufferedImage.TYPE_4BYTE_ABGR)
+					band.getRaster().getDataElements(0, y, band.getWidth(), 1, row);
+				else
+					{
+						band.getRGB(0, y, band.getWidth(), 1, pixels, 0, band.getWidth());
+						for (int x = 0, i = 0; x < band.getWidth(); x++, i += channels)
+							{
+								int pixel = pixels[x];
+								row[i] = (byte) (pixel >>> 16);
+								row[i + 1] = (byte) (pixel >>> 8);
+								row[i + 2] = (byte) pixel;
+								if (channels == 4)
+									row[i + 3] = (byte) (pixel >>> 24);
+							}
+					}
+			}
+	}
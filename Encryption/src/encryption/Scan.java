@@ -0,0 +1,214 @@
+package encryption;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Finds which images in a directory tree hold a message, without reading any more of each image than its top row of 4*4 squares.
+ * <p>
+ * Every message starts in the top left corner of its image, with an 'x' (or 'z' if it was compressed) or a {@link MessageHeader}. Only the top 4 rows of
+ * pixels are read, which a PNG gives up after inflating its first few rows and any other image through an {@link javax.imageio.ImageReadParam} source
+ * region, so scanning an archive of images is limited by how fast they can be opened rather than decoded. Any image that doesn't start with a header has
+ * a 1 in 14 chance of starting with an 'x' or a 'z' anyway, so each candidate is also scored on how much its message reads like English, see
+ * {@link MessageCompressor#getEnglishScore(CharSequence)}.
+ */
+class Scan
+	{
+		/**
+		 * The lowest score a message without a header can have and still be reported (set with -Dminscore).
+		 */
+		static double MIN_SCORE = 0;
+
+		/**
+		 * Scans every .jpg, .jpeg and .png file in a directory and all of the directories within it, reporting each image that probably holds a message as it
+		 * is found, followed by the overall throughput.
+		 * <p>
+		 * Each candidate is reported as a line of tab separated values: the layout of its message (header, plain or compressed), its score, whether the
+		 * whole message was within the top row of squares (complete or partial), the image and the message (or as much of it as was in the top row).
+		 *
+		 * @param n
+		 *            - the {@link Network} the messages were written with
+		 * @param root
+		 *            - the directory to scan
+		 * @param report
+		 *            - where to write the candidates, or null to print them
+		 * @param threads
+		 *            - the number of images to read at once
+		 * @throws IOException
+		 *             - if the report can not be written
+		 * @throws InterruptedException
+		 *             - if interrupted while waiting for the images to be scanned
+		 */
+		static void scan(Network n, File root, File report, int threads) throws IOException, InterruptedException
+			{
+				if (!root.isDirectory())
+					throw new IOException("Not a directory: " + root);
+
+				final Dictionary dictionary = DictionaryCache.get(n);
+				final PrintStream out = report == null ? System.out : new PrintStream(new BufferedOutputStream(new FileOutputStream(report)), false,
+						StandardCharsets.UTF_8);
+
+				final AtomicLong scanned = new AtomicLong(), candidates = new AtomicLong(), failed = new AtomicLong(), bytes = new AtomicLong();
+				ExecutorService workers = Executors.newFixedThreadPool(threads);
+
+				// Images are scanned as the tree is walked, with only a few waiting for each thread, so a tree of millions of images is never listed in memory
+				final Semaphore queued = new Semaphore(threads * 4);
+
+				long startTime = System.nanoTime();
+
+				try
+					{
+						Files.walkFileTree(root.toPath(), new SimpleFileVisitor<Path>()
+							{
+								@Override
+								public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) throws IOException
+									{
+										String name = file.getFileName().toString().toLowerCase(Locale.ROOT);
+										if (!attributes.isRegularFile() || !(name.endsWith(".jpg") || name.endsWith(".jpeg") || name.endsWith(".png")))
+											return FileVisitResult.CONTINUE;
+
+										queued.acquireUninterruptibly();
+										workers.execute(() ->
+											{
+												try
+													{
+														String candidate = scan(dictionary, file.toFile());
+														if (candidate != null)
+															{
+																candidates.incrementAndGet();
+																synchronized (out)
+																	{
+																		out.println(candidate);
+																	}
+															}
+														scanned.incrementAndGet();
+														bytes.addAndGet(attributes.size());
+													}
+												catch (Exception e)
+													{
+														failed.incrementAndGet();
+														System.err.println("FAILED " + file + " (" + e + ")");
+													}
+												finally
+													{
+														queued.release();
+													}
+											});
+
+										return FileVisitResult.CONTINUE;
+									}
+
+								@Override
+								public FileVisitResult visitFileFailed(Path file, IOException e)
+									{
+										// Skip anything that can't be read, such as a directory without permission, rather than giving up on the whole tree
+										System.err.println("FAILED " + file + " (" + e + ")");
+										return FileVisitResult.CONTINUE;
+									}
+							});
+					}
+				finally
+					{
+						workers.shutdown();
+						workers.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+
+						out.flush();
+						if (report != null)
+							out.close();
+					}
+
+				double seconds = (System.nanoTime() - startTime) / 1e9;
+				System.out.println(String.format("Scanned %d images (%d candidates, %d failed) in %.2f s: %.2f images/s, %.2f MB/s of images (%d threads)",
+						scanned.get(), candidates.get(), failed.get(), seconds, scanned.get() / seconds, bytes.get() / seconds / (1024 * 1024), threads));
+			}
+
+		/**
+		 * Reads the top row of 4*4 squares of an image.
+		 *
+		 * @return - the line to report if the image probably holds a message, otherwise null
+		 * @throws IOException
+		 *             - if the image can not be read
+		 */
+		static String scan(Dictionary dictionary, File image) throws IOException
+			{
+				StringBuilder letters;
+				int blocks;
+
+				try (ImageBands bands = ImageBands.open(image))
+					{
+						blocks = (bands.width / 4) * (bands.height / 4);
+						if (blocks == 0)
+							return null;
+
+						Carrier row = Carrier.of(bands.read(4));
+						letters = new StringBuilder(row.blocksWide);
+						for (int x = 0; x < row.blocksWide; x++)
+							letters.append(dictionary.getLetter(row.readBlock(x, 0)));
+					}
+
+				char first = letters.charAt(0);
+				if (first == MessageHeader.MARKER)
+					{
+						// A header is unlikely to be valid by chance, so it is reported whatever its message reads like
+						MessageHeader header = MessageHeader.read(letters);
+						if (header == null || header.getBlocks() > blocks)
+							return null;
+
+						boolean complete = header.getBlocks() <= letters.length();
+						String message = letters.substring(MessageHeader.BLOCKS, Math.min(header.getBlocks(), letters.length()));
+						if (header.compressed && complete)
+							message = MessageCompressor.decompress(message);
+
+						return report("header", message, complete, image);
+					}
+				else if (first == 'x' || first == 'z')
+					{
+						// The same rule as SwapCodec, a terminating character straight after the first character doesn't count
+						int end = letters.indexOf("{", 2);
+						boolean complete = end >= 0;
+						String message = letters.substring(1, complete ? end : letters.length());
+
+						// Half a compressed message (or one longer than any file name compresses into) can't be decompressed. Random characters decompress into
+						// letters as common as they are in English, so they are only taken for a compressed message if they compress back into exactly the same
+						// characters, which 3 in 4 don't.
+						if (first == 'z')
+							{
+								if (!complete || message.length() > MessageCompressor.MAX_COMPRESSED)
+									return null;
+
+								String compressed = message;
+								message = MessageCompressor.decompress(compressed);
+								if (!MessageCompressor.compress(message).equals(compressed))
+									return null;
+							}
+
+						if (MessageCompressor.getEnglishScore(message) < MIN_SCORE)
+							return null;
+
+						return report(first == 'z' ? "compressed" : "plain", message, complete, image);
+					}
+				else
+					return null;
+			}
+
+		private static String report(String layout, String message, boolean complete, File image)
+			{
+				return String.format(Locale.ROOT, "%s\t%.2f\t%s\t%s\t%s", layout, MessageCompressor.getEnglishScore(message), complete ? "complete" : "partial",
+						image, message);
+			}
+	}
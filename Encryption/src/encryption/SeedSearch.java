@@ -0,0 +1,319 @@
+package encryption;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Searches for the seed that gives the best balanced {@link Network}, i.e. the lowest standard deviation in the number of startingNodeStates that represent
+ * each character, for the current {@link Network#LEEWAY} and {@link Network#LEVELS}.
+ * <p>
+ * Random seeds are tried on every processor at once, each thread building its own {@link Network} for each seed. Every improvement is printed as soon as it
+ * is found (and optionally appended to a CSV file) so the search can be left running and stopped at any point.
+ * <p>
+ * Most seeds are clearly worse than the best found so far long before all 2^16 startingNodeStates have been run through their network, so each seed is
+ * first tried on a growing random sample of startingNodeStates, see {@link #STAGES}. After each stage the seed is dropped if the lower confidence bound on
+ * its standard deviation is already higher than the best seed's, see {@link #getMinStandardDeviation(int[], int, double)}. Only the seeds that survive every
+ * stage are swept in full, so every standard deviation reported is exact, and a seed that would have been an improvement is only dropped with a probability
+ * of around 1 - the confidence.
+ */
+class SeedSearch
+	{
+		/**
+		 * When to give up searching, a limit of 0 means no limit.
+		 */
+		private final long timeLimitMillis, maxCandidates;
+
+		/**
+		 * Stop as soon as a seed with a standard deviation this low is found.
+		 */
+		private final double targetStdv;
+
+		/**
+		 * Where to write each improvement as it is found, may be null.
+		 */
+		private final PrintWriter csv;
+
+		/**
+		 * The number of startingNodeStates sampled (with replacement) by the end of each stage, a seed that survives them all is swept in full.
+		 */
+		private static final int[] STAGES = { 512, 2048, 8192 };
+
+		/**
+		 * How many standard errors below the estimated standard deviation of a sampled network its lower confidence bound is, or infinity if seeds are never
+		 * dropped early.
+		 */
+		private final double z;
+
+		private final AtomicLong candidatesTested = new AtomicLong();
+		private final long startTime = System.nanoTime();
+
+		/**
+		 * The number of seeds dropped at each of the {@link #STAGES}.
+		 */
+		private final AtomicLongArray pruned = new AtomicLongArray(STAGES.length);
+
+		private int bestSeed = 54343;
+		private volatile double bestStdv = 1000000;
+		private volatile boolean finished = false;
+
+		private SeedSearch(long timeLimitMillis, long maxCandidates, double targetStdv, double confidence, PrintWriter csv)
+			{
+				this.timeLimitMillis = timeLimitMillis;
+				this.maxCandidates = maxCandidates;
+				this.targetStdv = targetStdv;
+				this.csv = csv;
+
+				// Only a bound that is too high matters, so the chance of being wrong is one sided
+				this.z = confidence >= 1 ? Double.POSITIVE_INFINITY : getZScore(2 * (1 - confidence));
+			}
+
+		/**
+		 * Searches until one of the limits is reached, or forever if there are none (stop it with ctrl+c, the best seed is still printed).
+		 *
+		 * @param threads
+		 *            - the number of seeds to test at once
+		 * @param timeLimitMillis
+		 *            - how long to search for, or 0 for no limit
+		 * @param maxCandidates
+		 *            - how many seeds to test, or 0 for no limit
+		 * @param targetStdv
+		 *            - stop once a seed with a standard deviation at least this low is found, or 0 for no target
+		 * @param confidence
+		 *            - how sure to be that a seed is worse than the best seed before dropping it without running every startingNodeStates through its network,
+		 *            1 to never drop a seed early
+		 * @param csvFile
+		 *            - a file to write every improvement to as it is found, or null
+		 * @throws IOException
+		 *             - if the CSV file can not be written, or a thread failed with a checked exception, in which case no best seed is printed
+		 * @throws InterruptedException
+		 *             - if interrupted while waiting for the search to finish
+		 */
+		static void search(int threads, long timeLimitMillis, long maxCandidates, double targetStdv, double confidence, File csvFile) throws IOException,
+				InterruptedException
+			{
+				PrintWriter csv = null;
+				if (csvFile != null)
+					{
+						boolean newFile = !csvFile.exists() || csvFile.length() == 0;
+						csv = new PrintWriter(new FileWriter(csvFile, true), true);
+						if (newFile)
+							csv.println("elapsed_ms,candidates,seed,leeway,levels,stdv");
+					}
+
+				final SeedSearch search = new SeedSearch(timeLimitMillis, maxCandidates, targetStdv, confidence, csv);
+
+				// Make sure the best seed is reported even if the search is stopped with ctrl+c
+				Thread reportBest = new Thread(search::printBest);
+				Runtime.getRuntime().addShutdownHook(reportBest);
+
+				System.out.println("Searching for the best seed for: LEEWAY == " + Network.LEEWAY + " | LEVELS == " + Network.LEVELS + " using " + threads + " threads");
+
+				ExecutorService workers = Executors.newFixedThreadPool(threads);
+				List<Future<?>> futures = new ArrayList<Future<?>>();
+				for (int i = 0; i < threads; i++)
+					futures.add(workers.submit(search::testRandomSeeds));
+				workers.shutdown();
+
+				try
+					{
+						// A thread that fails stops every other thread, so none of these waits forever
+						for (Future<?> future : futures)
+							future.get();
+					}
+				catch (ExecutionException e)
+					{
+						// Whatever was found so far isn't the result of the search that was asked for, so it isn't reported as one
+						Runtime.getRuntime().removeShutdownHook(reportBest);
+						if (e.getCause() instanceof RuntimeException)
+							throw (RuntimeException) e.getCause();
+						if (e.getCause() instanceof Error)
+							throw (Error) e.getCause();
+						throw new IOException("The search failed", e.getCause());
+					}
+				finally
+					{
+						workers.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+						if (csv != null)
+							csv.close();
+					}
+
+				Runtime.getRuntime().removeShutdownHook(reportBest);
+				search.printBest();
+			}
+
+		/**
+		 * Run by each thread, keeps testing random seeds until the search is finished, or finishes the search if it fails.
+		 */
+		private void testRandomSeeds()
+			{
+				try
+					{
+						testRandomSeedsUntilFinished();
+					}
+				finally
+					{
+						finished = true;
+					}
+			}
+
+		private void testRandomSeedsUntilFinished()
+			{
+				ThreadLocalRandom r = ThreadLocalRandom.current();
+				float[] scratch = new float[Network.SCRATCH_SIZE];
+				int[] sampleFrequency = new int[Network.NODES_PER_LEVEL];
+
+				while (!finished)
+					{
+						// Chose a random seed and test the network's standard deviation, unless a sample already shows it is worse than the best seed
+						int newSeed = r.nextInt();
+						Network n = new Network(newSeed);
+						int stage = getStagePruned(n, r, scratch, sampleFrequency);
+
+						long candidates = candidatesTested.incrementAndGet();
+						if (stage >= 0)
+							pruned.incrementAndGet(stage);
+						else
+							{
+								int[] charFrequency = n.getCharFrequencies();
+								double stdv = Encryption.getStandardDeviation(charFrequency, Encryption.getMean(charFrequency));
+								submit(newSeed, stdv, candidates);
+							}
+
+						long elapsedMillis = (System.nanoTime() - startTime) / 1000000;
+						if ((maxCandidates > 0 && candidates >= maxCandidates) || (timeLimitMillis > 0 && elapsedMillis >= timeLimitMillis))
+							finished = true;
+					}
+			}
+
+		/**
+		 * Runs a growing sample of startingNodeStates through a network, stopping as soon as it is sure enough that the network is worse than the best seed.
+		 *
+		 * @param sampleFrequency
+		 *            - reused to count how many of the sample produce each character
+		 * @return - the stage after which the network was found to be worse than the best seed, or -1 if it might be better and has to be swept in full
+		 */
+		private int getStagePruned(Network n, ThreadLocalRandom r, float[] scratch, int[] sampleFrequency)
+			{
+				if (z == Double.POSITIVE_INFINITY)
+					return -1;
+
+				Arrays.fill(sampleFrequency, 0);
+				int samples = 0;
+
+				for (int stage = 0; stage < STAGES.length; stage++)
+					{
+						for (; samples < STAGES[stage]; samples++)
+							sampleFrequency[n.getCharacterIndex(r.nextInt(1 << Network.STARTING_NODES), scratch)]++;
+
+						if (getMinStandardDeviation(sampleFrequency, samples, z) > bestStdv)
+							return stage;
+					}
+
+				return -1;
+			}
+
+		/**
+		 * A lower confidence bound on the standard deviation of a network, from the characters produced by a sample of its startingNodeStates.
+		 * <p>
+		 * The sum of the squares of how far each character's frequency is from perfectly balanced is estimated from the sample, less the amount that the
+		 * randomness of the sample adds to it on average, so that the estimate is unbiased. The bound is z standard errors of that estimate below it.
+		 *
+		 * @param sampleFrequency
+		 *            - how many of the sample produce each character
+		 * @param samples
+		 *            - the size of the sample
+		 * @param z
+		 *            - how many standard errors below the estimate the bound is
+		 */
+		static double getMinStandardDeviation(int[] sampleFrequency, int samples, double z)
+			{
+				double patterns = 1 << Network.STARTING_NODES;
+				double mean = patterns / sampleFrequency.length;
+
+				// The estimated sum of squares, the variance of each frequency, and the sums needed for the variance of the estimate
+				double sumOfSquares = 0, variances = 0, squaredVariances = 0, weightedSquares = 0, weightedDistances = 0;
+				for (int frequency : sampleFrequency)
+					{
+						double p = (double) frequency / samples;
+						double distance = (p * patterns) - mean;
+						double variance = patterns * patterns * p * (1 - p) / samples;
+
+						sumOfSquares += distance * distance;
+						variances += variance * samples / (samples - 1);
+						squaredVariances += variance * variance;
+						weightedSquares += distance * distance * p;
+						weightedDistances += distance * p;
+					}
+
+				double estimate = sumOfSquares - variances;
+				double estimateVariance = (4 * patterns * patterns / samples * (weightedSquares - (weightedDistances * weightedDistances))) + (2 * squaredVariances);
+				double bound = estimate - (z * Math.sqrt(estimateVariance));
+
+				return Math.sqrt(Math.max(0, bound) / sampleFrequency.length);
+			}
+
+		/**
+		 * @param alpha
+		 *            - the chance of a value from a normal distribution being further from the mean than the z score, in either direction
+		 * @return - the z score, to within 0.00045 (Abramowitz and Stegun 26.2.23)
+		 */
+		static double getZScore(double alpha)
+			{
+				double t = Math.sqrt(-2 * Math.log(alpha / 2));
+				return t - ((2.515517 + (0.802853 * t) + (0.010328 * t * t)) / (1 + (1.432788 * t) + (0.189269 * t * t) + (0.001308 * t * t * t)));
+			}
+
+		/**
+		 * Records a tested seed, reporting it if it is better than the best found so far.
+		 */
+		private synchronized void submit(int seed, double stdv, long candidates)
+			{
+				if (stdv < bestStdv)
+					{
+						bestSeed = seed;
+						bestStdv = stdv;
+
+						long elapsedMillis = (System.nanoTime() - startTime) / 1000000;
+						System.out.println("Seed: " + seed + "     Standard Deviation: " + stdv + "   (< 400 = very good)     after " + candidates + " seeds in "
+								+ elapsedMillis / 1000.0 + " s");
+
+						if (csv != null)
+							csv.println(elapsedMillis + "," + candidates + "," + seed + "," + Network.LEEWAY + "," + Network.LEVELS + "," + stdv);
+
+						if (stdv <= targetStdv)
+							finished = true;
+					}
+			}
+
+		private synchronized void printBest()
+			{
+				double seconds = (System.nanoTime() - startTime) / 1e9;
+				System.out.println("Best Seed: " + bestSeed + "     for: LEEWAY == " + Network.LEEWAY + " | LEVELS == " + Network.LEVELS + "     Standard Deviation: "
+						+ bestStdv + "     (" + candidatesTested.get() + " seeds tested at " + (int) (candidatesTested.get() / seconds) + " seeds/s)");
+
+				if (z != Double.POSITIVE_INFINITY)
+					{
+						StringBuilder stages = new StringBuilder("Dropped early:");
+						long swept = candidatesTested.get();
+						for (int stage = 0; stage < STAGES.length; stage++)
+							{
+								stages.append("     " + pruned.get(stage) + " after " + STAGES[stage] + " startingNodeStates");
+								swept -= pruned.get(stage);
+							}
+						System.out.println(stages + "     (" + swept + " swept in full)");
+					}
+			}
+	}
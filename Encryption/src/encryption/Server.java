@@ -0,0 +1,433 @@
+package encryption;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * A small HTTP service that embeds and extracts messages, so that other programs can use one long running JVM rather than starting a new one per image.
+ * <p>
+ * The server only listens on the loopback address and has two endpoints:
+ * <ul>
+ * <li>POST /embed?message=<i>the message</i> - the body is an image in any format {@link ImageIO} can read, the response is the same image as a PNG with
+ * the message hidden in it. Characters that can't be hidden are skipped and a message too long for the image is cut short.</li>
+ * <li>POST /extract - the body is an image, the response is the message hidden in it as UTF-8 text.</li>
+ * </ul>
+ * Every request shares a single {@link StegoCodec}, so the dictionary is only ever built once. Each request runs on its own virtual thread where the JVM
+ * has them (Java 21 and later), and on a pooled thread otherwise.
+ * <p>
+ * At most {@link #maxRequests} images are held in memory at once, a request that arrives while the server is full is turned away straight away with a 503
+ * rather than queueing, so that a burst of requests can't run the JVM out of memory. Images bigger than {@link #maxBody} bytes, or that would decode to
+ * more than {@link #maxPixels} pixels, are turned away with a 413.
+ */
+class Server
+	{
+		private final HttpServer http;
+		private final ExecutorService executor;
+		private final StegoCodec codec;
+
+		/**
+		 * Limits how many requests are being worked on at once, a request that can't get a permit straight away is rejected.
+		 */
+		private final Semaphore admission;
+		private final int maxRequests;
+		private final long maxBody;
+		private final long maxPixels;
+
+		/**
+		 * The most of the body of a request that is read when the request is turned away because the server is full, anything more is cut off by closing
+		 * the connection.
+		 */
+		private static final int DISCARD_LIMIT = 64 * 1024;
+
+		/**
+		 * The number of requests turned away because the server was full.
+		 */
+		final AtomicLong rejected = new AtomicLong();
+
+		/**
+		 * @param codec
+		 *            - used to embed and extract every message
+		 * @param port
+		 *            - the port to listen on, 0 to pick any free port
+		 * @param maxRequests
+		 *            - the number of requests that can be worked on at once
+		 * @param maxBody
+		 *            - the largest image (in bytes) that will be accepted, no more than 2 GB as each image is held in a single array
+		 * @param maxPixels
+		 *            - the largest image (in pixels once decoded) that will be accepted
+		 * @throws IOException
+		 *             - if the port can not be listened on
+		 */
+		Server(StegoCodec codec, int port, int maxRequests, long maxBody, long maxPixels) throws IOException
+			{
+				this.codec = codec;
+				this.maxRequests = maxRequests;
+				this.maxBody = Math.min(maxBody, Integer.MAX_VALUE - 8);
+				this.maxPixels = maxPixels;
+				this.admission = new Semaphore(maxRequests);
+
+				// Every image is already in memory, there is no need for ImageIO to copy it to a temporary file as it is read
+				ImageIO.setUseCache(false);
+
+				executor = newExecutor();
+				http = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+				http.setExecutor(executor);
+				http.createContext("/embed", exchange -> handle(exchange, true));
+				http.createContext("/extract", exchange -> handle(exchange, false));
+			}
+
+		void start()
+			{
+				http.start();
+			}
+
+		/**
+		 * Stops accepting requests, giving the requests already being worked on up to a second to finish.
+		 */
+		void stop()
+			{
+				http.stop(1);
+				executor.shutdown();
+			}
+
+		/**
+		 * @return - the port the server is listening on
+		 */
+		int getPort()
+			{
+				return http.getAddress().getPort();
+			}
+
+		/**
+		 * @return - an executor that starts a virtual thread for each request if this JVM has them (they were added in Java 21, this program is built for
+		 *         Java 17), otherwise a pool of platform threads
+		 */
+		private static ExecutorService newExecutor()
+			{
+				try
+					{
+						return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+					}
+				catch (ReflectiveOperationException e)
+					{
+						return Executors.newCachedThreadPool();
+					}
+			}
+
+		private void handle(HttpExchange exchange, boolean embed)
+			{
+				try
+					{
+						if (!exchange.getRequestMethod().equals("POST"))
+							{
+								exchange.getResponseHeaders().set("Allow", "POST");
+								sendError(exchange, 405, "Use POST");
+							}
+						else if (!admission.tryAcquire())
+							{
+								rejected.incrementAndGet();
+								discardBody(exchange);
+								exchange.getResponseHeaders().set("Retry-After", "1");
+								exchange.getResponseHeaders().set("Connection", "close");
+								sendError(exchange, 503, "Busy, " + maxRequests + " requests are already being worked on");
+							}
+						else
+							try
+								{
+									byte[] image = readImage(exchange);
+									if (image == null)
+										return;
+
+									if (embed)
+										embed(exchange, image);
+									else
+										extract(exchange, image);
+								}
+							finally
+								{
+									admission.release();
+								}
+					}
+				catch (IOException e)
+					{
+						// The client has gone away, there is nobody to tell
+					}
+				finally
+					{
+						exchange.close();
+					}
+			}
+
+		/**
+		 * Reads the body of a request, checking that it is an image that isn't too big before anything is decoded.
+		 *
+		 * @return - the bytes of the image, or null if the request has already been answered with an error
+		 */
+		private byte[] readImage(HttpExchange exchange) throws IOException
+			{
+				String contentLength = exchange.getRequestHeaders().getFirst("Content-Length");
+				long length = -1;
+				if (contentLength != null)
+					{
+						try
+							{
+								length = Long.parseLong(contentLength.trim());
+							}
+						catch (NumberFormatException e)
+							{
+								// Left at -1, which is rejected below
+							}
+
+						if (length < 0)
+							{
+								exchange.getResponseHeaders().set("Connection", "close");
+								sendError(exchange, 400, "Content-Length must be a number of bytes, not " + contentLength);
+								return null;
+							}
+					}
+
+				if (length > maxBody)
+					{
+						sendError(exchange, 413, "Images can be at most " + maxBody + " bytes");
+						return null;
+					}
+
+				// The body may be sent in chunks without saying how long it is, so the limit is checked as it is read as well
+				ByteArrayOutputStream body = new ByteArrayOutputStream(length < 0 ? 64 * 1024 : (int) length);
+				byte[] buffer = new byte[64 * 1024];
+				try (InputStream in = exchange.getRequestBody())
+					{
+						int read;
+						while ((read = in.read(buffer)) >= 0)
+							{
+								if (body.size() + read > maxBody)
+									{
+										sendError(exchange, 413, "Images can be at most " + maxBody + " bytes");
+										return null;
+									}
+								body.write(buffer, 0, read);
+							}
+					}
+
+				byte[] image = body.toByteArray();
+
+				// Only the header of the image is read here, to find out how big it will be once decoded
+				try (ImageInputStream in = ImageIO.createImageInputStream(new ByteArrayInputStream(image)))
+					{
+						Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+						if (!readers.hasNext())
+							{
+								sendError(exchange, 400, "Not a readable image");
+								return null;
+							}
+
+						ImageReader reader = readers.next();
+						try
+							{
+								reader.setInput(in, true, true);
+								if ((long) reader.getWidth(0) * reader.getHeight(0) > maxPixels)
+									{
+										sendError(exchange, 413, "Images can be at most " + maxPixels + " pixels");
+										return null;
+									}
+							}
+						catch (IOException e)
+							{
+								sendError(exchange, 400, "Not a readable image");
+								return null;
+							}
+						finally
+							{
+								reader.dispose();
+							}
+					}
+
+				return image;
+			}
+
+		private void embed(HttpExchange exchange, byte[] image) throws IOException
+			{
+				String message = getParameter(exchange, "message");
+				if (message == null)
+					{
+						sendError(exchange, 400, "Give the message to hide with ?message=");
+						return;
+					}
+
+				// The PNG is written straight into the response as it is compressed, so the response only starts once the message has been hidden
+				ResponseBody png = new ResponseBody(exchange, "image/png");
+				try
+					{
+						codec.embed(new ByteArrayInputStream(image), png, new StringReader(message));
+					}
+				catch (IllegalArgumentException | IOException e)
+					{
+						if (png.sent)
+							throw e instanceof IOException ? (IOException) e : new IOException(e);
+
+						sendError(exchange, 400, e.getMessage());
+						return;
+					}
+				png.close();
+			}
+
+		private void extract(HttpExchange exchange, byte[] image) throws IOException
+			{
+				String message;
+				try
+					{
+						message = codec.extract(new ByteArrayInputStream(image));
+					}
+				catch (IllegalArgumentException | IOException e)
+					{
+						sendError(exchange, 400, e.getMessage());
+						return;
+					}
+
+				send(exchange, 200, "text/plain; charset=UTF-8", message);
+			}
+
+		/**
+		 * Reads up to {@link #DISCARD_LIMIT} bytes of the body of a request that is being turned away without keeping any of it, so that a client that sends
+		 * a small image sees the response rather than the connection being reset while it is still sending. The response closes the connection, which cuts
+		 * off anything more, so a full server never spends more than this on a request it can't take.
+		 */
+		private static void discardBody(HttpExchange exchange) throws IOException
+			{
+				InputStream in = exchange.getRequestBody();
+				byte[] buffer = new byte[8 * 1024];
+				long total = 0;
+				int read;
+				while (total < DISCARD_LIMIT && (read = in.read(buffer)) >= 0)
+					total += read;
+			}
+
+		/**
+		 * @return - the value of a parameter in the query string of the request, or null if it wasn't given
+		 */
+		private static String getParameter(HttpExchange exchange, String name)
+			{
+				String query = exchange.getRequestURI().getRawQuery();
+				if (query == null)
+					return null;
+
+				for (String parameter : query.split("&"))
+					{
+						int equals = parameter.indexOf('=');
+						String key = equals < 0 ? parameter : parameter.substring(0, equals);
+						if (URLDecoder.decode(key, StandardCharsets.UTF_8).equals(name))
+							return equals < 0 ? "" : URLDecoder.decode(parameter.substring(equals + 1), StandardCharsets.UTF_8);
+					}
+
+				return null;
+			}
+
+		private static void sendError(HttpExchange exchange, int status, String message) throws IOException
+			{
+				send(exchange, status, "text/plain; charset=UTF-8", message + "\n");
+			}
+
+		private static void send(HttpExchange exchange, int status, String contentType, String body) throws IOException
+			{
+				byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+				exchange.getResponseHeaders().set("Content-Type", contentType);
+				exchange.sendResponseHeaders(status, bytes.length);
+				try (OutputStream out = exchange.getResponseBody())
+					{
+						out.write(bytes);
+					}
+			}
+
+		/**
+		 * The body of a successful response, which sends the headers the first time anything is written to it. Until then an error can still be sent
+		 * instead.
+		 */
+		private static class ResponseBody extends FilterOutputStream
+			{
+				private final HttpExchange exchange;
+				private final String contentType;
+
+				private boolean sent = false;
+
+				private ResponseBody(HttpExchange exchange, String contentType)
+					{
+						super(null);
+						this.exchange = exchange;
+						this.contentType = contentType;
+					}
+
+				private void send() throws IOException
+					{
+						if (sent)
+							return;
+
+						exchange.getResponseHeaders().set("Content-Type", contentType);
+
+						// A length of 0 sends the body in chunks, as its length isn't known until the image has been compressed
+						exchange.sendResponseHeaders(200, 0);
+						out = exchange.getResponseBody();
+						sent = true;
+					}
+
+				@Override
+				public void write(int b) throws IOException
+					{
+						send();
+						out.write(b);
+					}
+
+				@Override
+				public void write(byte[] b, int off, int len) throws IOException
+					{
+						send();
+						out.write(b, off, len);
+					}
+
+				@Override
+				public void flush() throws IOException
+					{
+						if (sent)
+							out.flush();
+					}
+
+				@Override
+				public void close() throws IOException
+					{
+						send();
+						out.close();
+					}
+			}
+
+		/**
+		 * Runs the server until the JVM is stopped.
+		 */
+		static void serve(StegoCodec codec, int port, int maxRequests, long maxBody, long maxPixels) throws IOException
+			{
+				final Server server = new Server(codec, port, maxRequests, maxBody, maxPixels);
+				Runtime.getRuntime().addShutdownHook(new Thread(server::stop));
+				server.start();
+
+				System.out.println("Listening on http://localhost:" + server.getPort() + "/embed and /extract, " + maxRequests + " requests at a time");
+			}
+	}
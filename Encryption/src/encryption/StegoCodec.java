@@ -0,0 +1,610 @@
+package encryption;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.ThreadLocalRandom;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Hides messages in images and reads them back out, for using this program as a library rather than from the command line.
+ * <p>
+ * A {@link StegoCodec} is built from the seed, leeway and number of levels of the {@link Network} that messages are read and written with, and never changes
+ * after that. It only ever reads its {@link Dictionary} and each thread seeds the startingNodeStates it picks from its own {@link ThreadLocalRandom}, so a
+ * single {@link StegoCodec} can be shared by any number of threads.
+ * <p>
+ * Messages are stored in the same way as the file names that SWAP_MESSAGES mode swaps, so an image written by one can be read by the other. Only the
+ * characters a-z and space can be hidden, any other character in a message is skipped. A message can optionally start with a {@link MessageHeader}
+ * that says how long it is, so that {@link #extract(File)} only reads the rows of the image that the message takes up.
+ * <p>
+ * Alternatively any bytes at all can be hidden as a payload, which uses the red, green and blue values of every pixel and so holds
+ * far more. An image holds either a message or a payload, whichever was hidden last, and has to be read the same way it was written.
+ * <p>
+ * Images that are worked on again and again can be converted to raw images with {@link #toRaw(File, File)}, whose pixels are changed in place through
+ * memory mapped files without ever being decoded or encoded, and converted back to PNG files with {@link #toPng(File, File)} once they are finished with.
+ */
+public final class StegoCodec
+	{
+		private final int seed;
+		private final float leeway;
+		private final int levels;
+		private final boolean header;
+
+		/**
+		 * Used to look up the startingNodeStates for each character to embed and the character for each 4*4 square extracted.
+		 */
+		private final Dictionary dictionary;
+
+		/**
+		 * @param seed
+		 *            - the seed of the {@link Network}, images can only be read with the seed they were written with
+		 * @param leeway
+		 *            - how close a node's state has to be to its goal for it to fire, see {@link Network#LEEWAY}
+		 * @param levels
+		 *            - the number of levels in the {@link Network}, at least 1
+		 */
+		public StegoCodec(int seed, float leeway, int levels)
+			{
+				this(seed, leeway, levels, false);
+			}
+
+		/**
+		 * @param header
+		 *            - true to write messages with a {@link MessageHeader} in front of them rather than a terminating character after them, either kind is
+		 *            read back without being told which it is
+		 */
+		public StegoCodec(int seed, float leeway, int levels, boolean header)
+			{
+				this(seed, leeway, levels, header, null);
+			}
+
+		/**
+		 * @param cache
+		 *            - a directory to save the network's dictionary of characters in, and read it back from the next time a {@link StegoCodec} is made
+		 *            with the same network, rather than sweeping every startingNodeStates through the network again. Null to build it in memory, which
+		 *            is what the other constructors do, so nothing is ever written to disk unless a directory is given.
+		 */
+		public StegoCodec(int seed, float leeway, int levels, boolean header, File cache)
+			{
+				if (levels < 1)
+					throw new IllegalArgumentException("A network needs at least one level, not " + levels);
+
+				this.seed = seed;
+				this.leeway = leeway;
+				this.levels = levels;
+				this.header = header;
+				this.dictionary = DictionaryCache.get(new Network(seed, leeway, levels), cache);
+			}
+
+		public int getSeed()
+			{
+				return seed;
+			}
+
+		public float getLeeway()
+			{
+				return leeway;
+			}
+
+		public int getLevels()
+			{
+				return levels;
+			}
+
+		public boolean hasHeader()
+			{
+				return header;
+			}
+
+		/**
+		 * @return - the number of characters of a message that fit in an image of the given size, every 4*4 square holds one character but two of them are
+		 *         needed to mark where the message starts and ends (or {@link MessageHeader#BLOCKS} to hold the header)
+		 */
+		public int getCapacity(int width, int height)
+			{
+				if (header)
+					return Math.max(0, Math.min(((width / 4) * (height / 4)) - MessageHeader.BLOCKS, MessageHeader.MAX_LENGTH));
+
+				return Math.max(0, ((width / 4) * (height / 4)) - 2);
+			}
+
+		/**
+		 * Hides a message in an image, replacing any message it already held.
+		 *
+		 * @param image
+		 *            - an image of type {@link BufferedImage#TYPE_INT_RGB}, {@link BufferedImage#TYPE_INT_ARGB}, {@link BufferedImage#TYPE_3BYTE_BGR} or
+		 *            {@link BufferedImage#TYPE_4BYTE_ABGR}, which is changed in place
+		 * @param message
+		 *            - the message to hide
+		 * @return - the number of characters of the message that were hidden, fewer than were given if the message didn't fit in the image
+		 * @throws IllegalArgumentException
+		 *             - if the image is of any other type, or the message has none of the characters a-z and space and there is no header to say so (a
+		 *             terminating character straight after the start of a message isn't read as the end of it, by this class or SWAP_MESSAGES mode)
+		 */
+		public int embed(BufferedImage image, CharSequence message)
+			{
+				try
+					{
+						return embed(image, new StringReader(message.toString()));
+					}
+				catch (IOException e)
+					{
+						// A StringReader never throws
+						throw new UncheckedIOException(e);
+					}
+			}
+
+		/**
+		 * The same as {@link #embed(BufferedImage, CharSequence)} but reads the message from a {@link Reader}. Only as much of the message as fits in the
+		 * image is read, and only the characters that can be hidden are kept, 2 bytes for each 4*4 square they take up (an eighth of a byte per pixel of the
+		 * image at most), since the whole message is needed before the image is rewritten in a single parallel pass.
+		 *
+		 * @throws IOException
+		 *             - if the message can not be read
+		 */
+		public int embed(BufferedImage image, Reader message) throws IOException
+			{
+				return embed(writableCarrier(image), message);
+			}
+
+		/**
+		 * The same as {@link #embed(BufferedImage, Reader)} but for the pixels of an image without the image, such as a tile of a larger image.
+		 *
+		 * @param raster
+		 *            - pixels stored as 8 bit RGB(A), either packed into an int for each pixel or in a byte for each band, band 2 being blue
+		 * @throws IllegalArgumentException
+		 *             - if the raster stores its pixels in any other way
+		 */
+		public int embed(WritableRaster raster, Reader message) throws IOException
+			{
+				return embed(Carrier.of(raster), message);
+			}
+
+		/**
+		 * Reads an image, hides a message in it and writes it back out as a PNG, which unlike a JPEG doesn't lose the message when it is compressed.
+		 *
+		 * @param image
+		 *            - an image in any format {@link ImageIO} can read
+		 * @param png
+		 *            - where to write the image holding the message
+		 * @param message
+		 *            - the message to hide
+		 * @return - the number of characters of the message that were hidden
+		 * @throws IOException
+		 *             - if the image can not be read or written, or the message can not be read
+		 */
+		public int embed(InputStream image, OutputStream png, Reader message) throws IOException
+			{
+				Carrier carrier = Carrier.of(read(image));
+				int hidden = embed(carrier, message);
+
+				if (!ImageIO.write(carrier.image, "png", png))
+					throw new IOException("No PNG writer is available");
+
+				return hidden;
+			}
+
+		/**
+		 * Reads the message hidden in an image.
+		 *
+		 * @param image
+		 *            - an image of any type, images that don't store their pixels as 8 bit RGB are copied first
+		 * @return - the message, or gibberish if the image doesn't hold one
+		 */
+		public String extract(BufferedImage image)
+			{
+				StringBuilder message = new StringBuilder();
+				try
+					{
+						extract(Carrier.of(image), message);
+					}
+				catch (IOException e)
+					{
+						// A StringBuilder never throws
+						throw new UncheckedIOException(e);
+					}
+				return message.toString();
+			}
+
+		/**
+		 * Reads the message hidden in the pixels of an image, passing each character on as soon as it is read.
+		 *
+		 * @param raster
+		 *            - pixels stored as 8 bit RGB(A), either packed into an int for each pixel or in a byte for each band, band 2 being blue
+		 * @param message
+		 *            - where to write the characters of the message
+		 * @return - true if the end of the message was found, false if every 4*4 square was read without finding it (so the image probably doesn't hold a
+		 *         message at all)
+		 * @throws IOException
+		 *             - if the message can not be written
+		 * @throws IllegalArgumentException
+		 *             - if the raster stores its pixels in any other way
+		 */
+		public boolean extract(Raster raster, Appendable message) throws IOException
+			{
+				return extract(Carrier.of(raster), message);
+			}
+
+		/**
+		 * Reads an image and the message hidden in it.
+		 *
+		 * @param image
+		 *            - an image in any format {@link ImageIO} can read
+		 * @return - the message, or gibberish if the image doesn't hold one
+		 * @throws IOException
+		 *             - if the image can not be read
+		 */
+		public String extract(InputStream image) throws IOException
+			{
+				return extract(read(image));
+			}
+
+		/**
+		 * Reads the message hidden in an image file, reading only the rows of the image that the message takes up if it has a {@link MessageHeader} (a band
+		 * at a time until the terminating character is found if it doesn't), so that a message can be read from a huge image without decoding all of it.
+		 *
+		 * @param image
+		 *            - an image in any format {@link ImageIO} can read
+		 * @return - the message, or gibberish if the image doesn't hold one
+		 * @throws IOException
+		 *             - if the image can not be read
+		 */
+		public String extract(File image) throws IOException
+			{
+				// A raw image is read in place, only touching the pages of the file that hold the message
+				if (RawImage.isRaw(image))
+					try (RawImage raw = RawImage.open(image, false))
+						{
+							StringBuilder message = new StringBuilder();
+							extract(Carrier.of(raw), message);
+							return message.toString();
+						}
+
+				try (ImageBands bands = ImageBands.open(image))
+					{
+						return new MessageReader(dictionary).read(bands, bands.getBandRows(SwapCodec.BAND_MEMORY));
+					}
+			}
+
+		/**
+		 * @param alpha
+		 *            - whether the payload would use the alpha values as well as RGB
+		 * @return - the number of bytes of payload that fit in an image of the given size
+		 */
+		public long getPayloadCapacity(int width, int height, boolean alpha)
+			{
+				return Payload.getCapacity(width, height, alpha);
+			}
+
+		/**
+		 * Hides any bytes at all in an image, replacing any message or payload it already held.
+		 *
+		 * @param image
+		 *            - an image of type {@link BufferedImage#TYPE_INT_RGB}, {@link BufferedImage#TYPE_INT_ARGB}, {@link BufferedImage#TYPE_3BYTE_BGR} or
+		 *            {@link BufferedImage#TYPE_4BYTE_ABGR}, which is changed in place
+		 * @param payload
+		 *            - the bytes to hide, read as they are hidden
+		 * @param alpha
+		 *            - true to hide bits in the alpha values as well as RGB, which only works for images with an alpha channel
+		 * @return - the number of bytes of the payload hidden
+		 * @throws IOException
+		 *             - if the payload can not be read
+		 * @throws IllegalArgumentException
+		 *             - if the image is of any other type, or the payload is bigger than {@link #getPayloadCapacity(int, int, boolean)}
+		 */
+		public long embedPayload(BufferedImage image, InputStream payload, boolean alpha) throws IOException
+			{
+				return embedPayload(image, payload, alpha, false);
+			}
+
+		/**
+		 * The same as {@link #embedPayload(BufferedImage, InputStream, boolean)} but can compress the payload with Deflate first, which is marked in the
+		 * header so that {@link #extractPayload(BufferedImage, OutputStream)} decompresses it again.
+		 *
+		 * @param compress
+		 *            - true to compress the payload, the payload has to fit in the image once it is compressed
+		 */
+		public long embedPayload(BufferedImage image, InputStream payload, boolean alpha, boolean compress) throws IOException
+			{
+				return Payload.embed(writableCarrier(image), payload, alpha, compress, seed);
+			}
+
+		/**
+		 * The same as {@link #embedPayload(BufferedImage, InputStream, boolean, boolean)} but reads the image from a stream and writes it back out as a PNG.
+		 */
+		public long embedPayload(InputStream image, OutputStream png, InputStream payload, boolean alpha, boolean compress) throws IOException
+			{
+				Carrier carrier = Carrier.of(read(image));
+				long hidden = Payload.embed(carrier, payload, alpha, compress, seed);
+
+				if (!ImageIO.write(carrier.image, "png", png))
+					throw new IOException("No PNG writer is available");
+
+				return hidden;
+			}
+
+		/**
+		 * Reads the payload hidden in an image.
+		 *
+		 * @param image
+		 *            - an image of any type
+		 * @param payload
+		 *            - where to write the bytes of the payload
+		 * @return - the number of bytes read, after they were decompressed if they had been compressed
+		 * @throws IOException
+		 *             - if the image doesn't hold a payload (or it was hidden with a different seed), or the payload can not be written
+		 */
+		public long extractPayload(BufferedImage image, OutputStream payload) throws IOException
+			{
+				return Payload.extract(Carrier.of(image), payload, seed);
+			}
+
+		/**
+		 * The same as {@link #extractPayload(BufferedImage, OutputStream)} but reads the image from a stream.
+		 */
+		public long extractPayload(InputStream image, OutputStream payload) throws IOException
+			{
+				return extractPayload(read(image), payload);
+			}
+
+		/**
+		 * Hides a message in a raw image in place, see {@link #toRaw(File, File)}. Only the pages of the file holding 4*4 squares are read and written, and
+		 * the image is never held in memory, although the message is, as it is by {@link #embed(BufferedImage, Reader)}.
+		 *
+		 * @param raw
+		 *            - the raw image to change
+		 * @param message
+		 *            - the message to hide
+		 * @return - the number of characters of the message that were hidden
+		 * @throws IOException
+		 *             - if the file isn't a raw image, can not be mapped or the message can not be read
+		 */
+		public int embedInPlace(File raw, Reader message) throws IOException
+			{
+				try (RawImage image = RawImage.open(raw, true))
+					{
+						return embed(Carrier.of(image), message);
+					}
+			}
+
+		/**
+		 * The same as {@link #embedPayload(BufferedImage, InputStream, boolean, boolean)} but changes a raw image in place, see {@link #toRaw(File, File)}.
+		 *
+		 * @throws IOException
+		 *             - if the file isn't a raw image, can not be mapped or the payload can not be read
+		 */
+		public long embedPayloadInPlace(File raw, InputStream payload, boolean alpha, boolean compress) throws IOException
+			{
+				try (RawImage image = RawImage.open(raw, true))
+					{
+						return Payload.embed(Carrier.of(image), payload, alpha, compress, seed);
+					}
+			}
+
+		/**
+		 * The same as {@link #extractPayload(BufferedImage, OutputStream)} but reads a raw image in place (see {@link #toRaw(File, File)}), or any other image
+		 * {@link ImageIO} can read.
+		 */
+		public long extractPayload(File image, OutputStream payload) throws IOException
+			{
+				if (!RawImage.isRaw(image))
+					try (InputStream in = new FileInputStream(image))
+						{
+							return extractPayload(in, payload);
+						}
+
+				try (RawImage raw = RawImage.open(image, false))
+					{
+						return Payload.extract(Carrier.of(raw), payload, seed);
+					}
+			}
+
+		/**
+		 * Clears the bit of every pixel of a raw image that could ever hold part of a message, in place, see {@link #toRaw(File, File)}.
+		 *
+		 * @throws IOException
+		 *             - if the file isn't a raw image or can not be mapped
+		 */
+		public void cleanInPlace(File raw) throws IOException
+			{
+				try (RawImage image = RawImage.open(raw, true))
+					{
+						Carrier.of(image).clean();
+					}
+			}
+
+		/**
+		 * Converts an image into a raw image, a header followed by the red, green, blue (and alpha) values of every pixel uncompressed, which messages and
+		 * payloads can then be hidden in and read from in place through memory mapped files. The image is read a band of rows at a time, so it never has to
+		 * fit in memory.
+		 *
+		 * @param image
+		 *            - an image in any format {@link ImageIO} can read
+		 * @param raw
+		 *            - the raw image to create, which must not already exist
+		 * @throws IOException
+		 *             - if the image can not be read or the raw image written
+		 */
+		public static void toRaw(File image, File raw) throws IOException
+			{
+				RawImage.fromImage(image, raw, SwapCodec.BAND_MEMORY);
+			}
+
+		/**
+		 * Converts a raw image back into a PNG file, a band of rows at a time.
+		 *
+		 * @param raw
+		 *            - a raw image made by {@link #toRaw(File, File)}
+		 * @param png
+		 *            - where to write the PNG file, which is overwritten if it already exists
+		 * @throws IOException
+		 *             - if the raw image can not be read or the PNG file written
+		 */
+		public static void toPng(File raw, File png) throws IOException
+			{
+				RawImage.toPng(raw, png, SwapCodec.BAND_MEMORY);
+			}
+
+		/**
+		 * Reads the message one character at a time into an array, along with the characters that mark its start and end (or the header in front of it,
+		 * which can only be written once the length of the message is known), then rewrites the image with them and fills the rest of it with random data.
+		 * The startingNodeStates for the characters are picked as the image is rewritten, by each band of rows in parallel, see
+		 * {@link Carrier#rewrite(char[], int, Dictionary, SplittableRandom, SplittableRandom)}.
+		 */
+		private int embed(Carrier carrier, Reader message) throws IOException
+			{
+				int blocks = carrier.blocksWide * carrier.blocksHigh;
+				if (header)
+					return embedWithHeader(carrier, message, blocks);
+
+				if (blocks < 3)
+					throw new IllegalArgumentException("The image is too small to hold a message");
+
+				char[] letters = new char[Math.min(blocks, 1024)];
+
+				// The first character is never read back, it is only there so that a message can't start with the terminating character
+				letters[0] = 'x';
+				int block = 1;
+
+				int c;
+				// Always leave room for the terminating character
+				while (block < blocks - 1 && (c = message.read()) >= 0)
+					if (c == ' ' || (c >= 'a' && c <= 'z'))
+						{
+							if (block == letters.length - 1)
+								letters = Arrays.copyOf(letters, (int) Math.min(blocks, letters.length * 2L));
+							letters[block++] = (char) c;
+						}
+
+				// Checked before the image is touched, as an empty message would be read back as whatever random data follows it
+				if (block == 1)
+					throw new IllegalArgumentException("The message has none of the characters a-z and space, so there is nothing to hide");
+
+				letters[block++] = '{';
+
+				SplittableRandom patterns = new SplittableRandom(ThreadLocalRandom.current().nextLong());
+				carrier.rewrite(Arrays.copyOf(letters, block), 0, dictionary, patterns, new SplittableRandom());
+
+				// Less the characters that mark the start and end
+				return block - 2;
+			}
+
+		/**
+		 * Does the same as {@link #embed(Carrier, Reader)} but with a {@link MessageHeader} in front of the message, which is written once the length of the
+		 * message is known.
+		 */
+		private int embedWithHeader(Carrier carrier, Reader message, int blocks) throws IOException
+			{
+				if (blocks <= MessageHeader.BLOCKS)
+					throw new IllegalArgumentException("The image is too small to hold a message with a header");
+
+				int end = (int) Math.min(blocks, (long) MessageHeader.BLOCKS + MessageHeader.MAX_LENGTH);
+				char[] letters = new char[Math.min(end, 1024)];
+				int block = MessageHeader.BLOCKS;
+
+				int c;
+				while (block < end && (c = message.read()) >= 0)
+					if (c == ' ' || (c >= 'a' && c <= 'z'))
+						{
+							if (block == letters.length)
+								letters = Arrays.copyOf(letters, (int) Math.min(end, letters.length * 2L));
+							letters[block++] = (char) c;
+						}
+
+				MessageHeader.write(letters, block - MessageHeader.BLOCKS, false);
+
+				SplittableRandom patterns = new SplittableRandom(ThreadLocalRandom.current().nextLong());
+				carrier.rewrite(Arrays.copyOf(letters, block), 0, dictionary, patterns, new SplittableRandom());
+
+				return block - MessageHeader.BLOCKS;
+			}
+
+		private boolean extract(Carrier carrier, Appendable message) throws IOException
+			{
+				int blocks = carrier.blocksWide * carrier.blocksHigh;
+				if (blocks == 0)
+					return false;
+
+				// The first character marks the start of the message, and whether it has a header or SWAP_MESSAGES compressed it (in which case it can't be
+				// passed on until the whole message has been read)
+				char first = dictionary.getLetter(carrier.readBlock(0, 0));
+				if (first == MessageHeader.MARKER && blocks >= MessageHeader.BLOCKS)
+					{
+						StringBuilder letters = new StringBuilder(MessageHeader.BLOCKS).append(first);
+						for (int block = 1; block < MessageHeader.BLOCKS; block++)
+							letters.append(dictionary.getLetter(carrier.readBlock(block % carrier.blocksWide, block / carrier.blocksWide)));
+
+						MessageHeader header = MessageHeader.read(letters);
+						if (header != null && header.getBlocks() <= blocks)
+							return extract(carrier, header, message);
+					}
+
+				boolean compressed = first == 'z';
+				Appendable characters = compressed ? new StringBuilder() : message;
+
+				boolean terminated = false;
+				for (int block = 1; block < blocks && !terminated; block++)
+					{
+						// The same rule as SwapCodec, a terminating character straight after the first character doesn't count
+						char letter = dictionary.getLetter(carrier.readBlock(block % carrier.blocksWide, block / carrier.blocksWide));
+						if (letter == '{' && block > 1)
+							terminated = true;
+						else
+							characters.append(letter);
+					}
+
+				// Half a compressed message can't be decompressed, and without a terminating character the image probably never held a message at all
+				if (compressed)
+					message.append(terminated ? MessageCompressor.decompress((StringBuilder) characters) : (StringBuilder) characters);
+
+				return terminated;
+			}
+
+		/**
+		 * Reads exactly as many 4*4 squares as the {@link MessageHeader} says the message takes up.
+		 */
+		private boolean extract(Carrier carrier, MessageHeader header, Appendable message) throws IOException
+			{
+				Appendable characters = header.compressed ? new StringBuilder(header.length) : message;
+
+				for (int block = MessageHeader.BLOCKS; block < header.getBlocks(); block++)
+					characters.append(dictionary.getLetter(carrier.readBlock(block % carrier.blocksWide, block / carrier.blocksWide)));
+
+				if (header.compressed)
+					message.append(MessageCompressor.decompress((StringBuilder) characters));
+
+				return true;
+			}
+
+		/**
+		 * @return - a {@link Carrier} that writes straight into the image, rather than into a converted copy of it
+		 */
+		private static Carrier writableCarrier(BufferedImage image)
+			{
+				Carrier carrier = Carrier.of(image);
+				if (carrier.image != image)
+					throw new IllegalArgumentException("Can only hide messages in images of type TYPE_INT_RGB, TYPE_INT_ARGB, TYPE_3BYTE_BGR or TYPE_4BYTE_ABGR");
+
+				return carrier;
+			}
+
+		private static BufferedImage read(InputStream image) throws IOException
+			{
+				BufferedImage img = ImageIO.read(image);
+				if (img == null)
+					throw new IOException("Not a readable image");
+
+				return img;
+			}
+	}
@@ -0,0 +1,443 @@
+package encryption;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.SplittableRandom;
+
+import javax.imageio.ImageIO;
+
+import encryption.SwapMetrics.Phase;
+
+/**
+ * Swaps the message hidden in an image with the image's file name.
+ * <p>
+ * A {@link SwapCodec} is not thread safe, but it only ever reads its {@link Dictionary} so any number of them can share one, giving each thread its own
+ * {@link SwapCodec}.
+ */
+class SwapCodec
+	{
+		/**
+		 * Used to look up the startingNodeStates for each character to encode and the character for each 4*4 square decoded.
+		 */
+		private final Dictionary dictionary;
+
+		/**
+		 * Seeds the streams used to choose between the many startingNodeStates that represent each character, see
+		 * {@link Carrier#rewrite(char[], int, Dictionary, SplittableRandom, SplittableRandom)}. The random data after the message comes from an unseeded
+		 * stream instead, as r may be seeded the same way every run and two images ending in the same noise would give the game away.
+		 */
+		private final Random r;
+
+		/**
+		 * Reused to read each message that is decoded, see {@link #getCurrentlyEncryptedMessage(Carrier)}.
+		 */
+		private final MessageReader reader;
+
+		/**
+		 * Measures each image as it is swapped, see {@link SwapMetrics}.
+		 */
+		private final SwapMetrics.Trace trace = new SwapMetrics.Trace();
+
+		/**
+		 * Images whose pixels take up more bytes than this are swapped a band of rows at a time, with each band taking up no more than this (set with
+		 * -Dbandmemory=<i>megabytes</i>).
+		 */
+		static long BAND_MEMORY = 64L * 1024 * 1024;
+
+		/**
+		 * Whether file names are compressed with {@link MessageCompressor} before they are encoded, when that makes them take up fewer 4*4 squares (set with
+		 * -Dcompress=true). Compressed messages start with a 'z' rather than an 'x', so either kind is read back without being told which it is.
+		 */
+		static boolean COMPRESS = false;
+
+		/**
+		 * Whether messages start with a {@link MessageHeader} rather than an 'x', and so have no terminating character (set with -Dlayout=header). Either
+		 * kind is read back without being told which it is, but a message with a header can be read without reading any more of the image than it takes up.
+		 */
+		static boolean HEADER = false;
+
+		/**
+		 * @param dictionary
+		 *            - the {@link Dictionary} of the {@link Network} that messages are read and written with
+		 * @param r
+		 *            - used to choose which startingNodeStates represent each character
+		 */
+		SwapCodec(Dictionary dictionary, Random r)
+			{
+				this.dictionary = dictionary;
+				this.r = r;
+				this.reader = new MessageReader(dictionary);
+			}
+
+		/**
+		 * This Method Treats the file name of the image as one message and any information encoded within the image as the second, it then swaps these messages
+		 * around, encoding the file name into the image and renaming the image to the previously encoded message.
+		 * <p>
+		 * Images whose pixels would take up more than {@link #BAND_MEMORY} are read and written a band of rows at a time, see
+		 * {@link #swapInformationInBands(File, File, ImageBands, int)}.
+		 *
+		 * @param imageFile
+		 *            - The image file that we want to extract a message from and hide a message within.
+		 * @param outputDirectory
+		 *            - Where to save the swapped image, if null the image file is overwritten and renamed instead
+		 * @return - the swapped image file, named after whatever was previously stored within the image file
+		 * @throws IOException
+		 *             - if the image can not be read, written or renamed, including when an image with the new name already exists
+		 */
+		File swapInformation(File imageFile, File outputDirectory) throws IOException
+			{
+				trace.start(imageFile);
+				File swappedImage = null;
+				try
+					{
+						swappedImage = swap(imageFile, outputDirectory);
+						return swappedImage;
+					}
+				finally
+					{
+						trace.finish(swappedImage);
+					}
+			}
+
+		/**
+		 * Does the work of {@link #swapInformation(File, File)}, which measures it.
+		 */
+		private File swap(File imageFile, File outputDirectory) throws IOException
+			{
+				trace.bytesRead = imageFile.length();
+
+				try (ImageBands bands = ImageBands.open(imageFile))
+					{
+						int bandRows = bands.getBandRows(BAND_MEMORY);
+						if (bandRows < bands.height)
+							return swapInformationInBands(imageFile, outputDirectory, bands, bandRows);
+					}
+
+				trace.begin(Phase.READ);
+				BufferedImage img = ImageIO.read(imageFile);
+				if (img == null)
+					throw new IOException("Not a readable image: " + imageFile);
+
+				// Work directly on the pixel data of the image (or a copy of it, if the image stores its pixels in an unusual way)
+				final Carrier carrier = Carrier.of(img);
+				trace.end(Phase.READ);
+
+				/* Extract the message currently encoded within the image (will be gibberish if this is the first time this program has been run on an image). */
+				trace.begin(Phase.DECODE);
+				String newFileName = getCurrentlyEncryptedMessage(carrier);
+				trace.end(Phase.DECODE);
+
+				// Hide the file name in place of the old message
+				encodeMessage(carrier, imageFile);
+
+				return save(imageFile, outputDirectory, newFileName, file ->
+					{
+						trace.begin(Phase.WRITE);
+						try (PngBandWriter out = new PngBandWriter(file, carrier.width, carrier.height))
+							{
+								out.write(carrier.image);
+							}
+						trace.end(Phase.WRITE);
+					});
+			}
+
+		/**
+		 * Encodes the file name of an image into it, wiping whatever it held before, and fills the rest of the image with random data.
+		 *
+		 * @param carrier
+		 *            - the pixel data of the image
+		 * @param imageFile
+		 *            - the image whose file name is the message
+		 * @throws IOException
+		 *             - if the image is too small to hold even a single character
+		 */
+		void encodeMessage(Carrier carrier, File imageFile) throws IOException
+			{
+				// Every character of the file name that fits in the image
+				trace.begin(Phase.ENCODE);
+				char[] letters = getMessageLetters(imageFile, carrier.blocksWide * carrier.blocksHigh);
+
+				// Write each character in the correct spot, moving along the rows of 4*4 squares, and random data that is never the same twice in every
+				// square after the message
+				trace.blocksFilled += carrier.rewrite(letters, 0, dictionary, new SplittableRandom(r.nextLong()), new SplittableRandom());
+				trace.blocksEncoded += letters.length;
+				trace.end(Phase.ENCODE);
+			}
+
+		/**
+		 * Does exactly the same as {@link #swapInformation(File, File)} but only ever holds one band of the image's rows in memory at once. The image is read
+		 * once to find the message currently encoded within it (which is normally all within the first band), then again to rewrite each band before streaming it
+		 * out to the swapped image.
+		 *
+		 * @param bands
+		 *            - the image, not yet read from
+		 * @param bandRows
+		 *            - the number of rows in each band, a multiple of 4
+		 */
+		private File swapInformationInBands(File imageFile, File outputDirectory, ImageBands bands, final int bandRows) throws IOException
+			{
+				final int width = bands.width, height = bands.height;
+				final int blocksWide = width / 4;
+
+				// Extract the message currently encoded within the image, reading only the rows it takes up (or as many bands as it takes to find the
+				// terminating character, for a message without a header)
+				reader.reset();
+				boolean finished = false;
+				while (!finished && bands.nextRow < height)
+					{
+						trace.begin(Phase.READ);
+						Carrier band = Carrier.of(bands.read(reader.getRows(bands, bandRows)));
+						trace.end(Phase.READ);
+
+						trace.begin(Phase.DECODE);
+						finished = readMessage(band);
+						trace.end(Phase.DECODE);
+					}
+
+				String newFileName = reader.getMessage(finished);
+
+				// Every character of the file name that fits in the image, and the streams that every band's random numbers are split off from in turn
+				trace.begin(Phase.ENCODE);
+				final char[] letters = getMessageLetters(imageFile, blocksWide * (height / 4));
+				final SplittableRandom patterns = new SplittableRandom(r.nextLong()), fill = new SplittableRandom();
+				trace.end(Phase.ENCODE);
+
+				return save(imageFile, outputDirectory, newFileName, file ->
+					{
+						try (ImageBands in = ImageBands.open(imageFile); PngBandWriter out = new PngBandWriter(file, width, height))
+							{
+								while (in.nextRow < height)
+									{
+										// The index of the first row of 4*4 squares in this band
+										int firstBlockY = in.nextRow / 4;
+
+										trace.begin(Phase.READ);
+										Carrier carrier = Carrier.of(in.read(bandRows));
+										trace.end(Phase.READ);
+
+										// Write the characters that fall within this band, and random data in the squares after the message
+										trace.begin(Phase.ENCODE);
+										int filled = carrier.rewrite(letters, firstBlockY * blocksWide, dictionary, patterns, fill);
+										trace.blocksEncoded += (carrier.blocksWide * carrier.blocksHigh) - filled;
+										trace.blocksFilled += filled;
+										trace.end(Phase.ENCODE);
+
+										trace.begin(Phase.WRITE);
+										out.write(carrier.image);
+										trace.end(Phase.WRITE);
+									}
+							}
+					});
+			}
+
+		/**
+		 * Turns the file name of an image into the message to encode, keeping only the characters that can be encoded, we add the terminating character to it
+		 * so that the Network knows when to stop decoding when it tries to
+		 *
+		 * @param imageFile
+		 *            - the image whose file name is the message
+		 * @param blocks
+		 *            - the number of 4*4 squares in the image, any of the message that doesn't fit is lost
+		 * @return - each character in the order they are written to the image, moving along each row of 4*4 squares in turn
+		 * @throws IOException
+		 *             - if the image is too small to hold even a single character
+		 */
+		private char[] getMessageLetters(File imageFile, int blocks) throws IOException
+			{
+				if (blocks == 0)
+					throw new IOException("The image is too small to hold a message: " + imageFile);
+
+				String name = imageFile.getName().substring(0, imageFile.getName().indexOf('.'));
+				if (HEADER)
+					return getHeaderLetters(name, blocks, imageFile);
+
+				String message = "x" + name + '{';
+
+				if (COMPRESS)
+					{
+						// Only worth it if the compressed message is shorter, and it has to fit completely as half a compressed message can't be read
+						String compressed = "z" + MessageCompressor.compress(name) + '{';
+						int length = 0;
+						for (int i = 0; i < message.length(); i++)
+							if (message.charAt(i) == ' ' || (message.charAt(i) >= 'a' && message.charAt(i) <= '{'))
+								length++;
+
+						if (compressed.length() < length && compressed.length() <= blocks && compressed.length() - 2 <= MessageCompressor.MAX_COMPRESSED)
+							message = compressed;
+					}
+
+				char[] letters = new char[Math.min(message.length(), blocks)];
+				int count = 0;
+
+				for (int i = 0; i < message.length(); i++)
+					{
+						// The next character we want to encode
+						char charToEncode = message.charAt(i);
+
+						// If the character is a space, '{' or an alphabetic character then encode it, otherwise skip it
+						if (charToEncode == ' ' || ((int) charToEncode >= 97 && (int) charToEncode <= 123))
+							{
+								// if we have run out of room in the image, stop here
+								if (count == blocks)
+									{
+										System.out.println("Sorry but your message was too long for the image the following was lost: \n -"
+												+ message.substring(i, message.lastIndexOf('{')));
+										break;
+									}
+
+								letters[count++] = charToEncode;
+							}
+					}
+
+				return Arrays.copyOf(letters, count);
+			}
+
+		/**
+		 * Does the same as {@link #getMessageLetters(File, int)} but puts a {@link MessageHeader} in front of the message rather than an 'x', and no
+		 * terminating character after it.
+		 *
+		 * @param name
+		 *            - the file name of the image without its extension
+		 */
+		private char[] getHeaderLetters(String name, int blocks, File imageFile) throws IOException
+			{
+				if (blocks <= MessageHeader.BLOCKS)
+					throw new IOException("The image is too small to hold a message with a header: " + imageFile);
+
+				// Only the characters that can be encoded are kept
+				StringBuilder message = new StringBuilder(name.length());
+				for (int i = 0; i < name.length(); i++)
+					if (name.charAt(i) == ' ' || (name.charAt(i) >= 'a' && name.charAt(i) <= 'z'))
+						message.append(name.charAt(i));
+
+				int room = Math.min(blocks - MessageHeader.BLOCKS, MessageHeader.MAX_LENGTH);
+				boolean compressed = false;
+
+				if (COMPRESS)
+					{
+						// Only worth it if the compressed message is shorter, and it has to fit completely as half a compressed message can't be read
+						String shorter = MessageCompressor.compress(name);
+						if (shorter.length() < message.length() && shorter.length() <= room && shorter.length() <= MessageCompressor.MAX_COMPRESSED)
+							{
+								message.setLength(0);
+								message.append(shorter);
+								compressed = true;
+							}
+					}
+
+				if (message.length() > room)
+					{
+						System.out.println("Sorry but your message was too long for the image the following was lost: \n -" + message.substring(room));
+						message.setLength(room);
+					}
+
+				char[] letters = new char[MessageHeader.BLOCKS + message.length()];
+				MessageHeader.write(letters, message.length(), compressed);
+				message.getChars(0, message.length(), letters, MessageHeader.BLOCKS);
+
+				return letters;
+			}
+
+		/**
+		 * Saves a swapped image under its new name, either in place of the original image or in another directory.
+		 *
+		 * @param newFileName
+		 *            - the name to save the image as, without its extension
+		 * @param output
+		 *            - writes the swapped image to the file it is given
+		 * @return - the swapped image file
+		 */
+		private static File save(File imageFile, File outputDirectory, String newFileName, ImageOutput output) throws IOException
+			{
+				// Get the file extension
+				String fileExtension = imageFile.getName().substring(imageFile.getName().indexOf('.'), imageFile.getName().length());
+
+				if (outputDirectory == null)
+					{
+						// create a new file with a new name
+						File renamedImage = new File(imageFile.getParentFile(), newFileName + fileExtension);
+
+						// write the new image data next to the image, as the image may still be being read while it is written
+						File swappedImage = File.createTempFile("swap", ".png", imageFile.getAbsoluteFile().getParentFile());
+						try
+							{
+								output.writeTo(swappedImage);
+
+								// replace the old image, failing rather than overwriting another image with the same name
+								if (renamedImage.getAbsoluteFile().equals(imageFile.getAbsoluteFile()))
+									Files.move(swappedImage.toPath(), imageFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+								else
+									{
+										Files.move(swappedImage.toPath(), renamedImage.toPath());
+										Files.delete(imageFile.toPath());
+									}
+							}
+						catch (IOException e)
+							{
+								swappedImage.delete();
+								throw e;
+							}
+
+						return renamedImage;
+					}
+				else
+					{
+						// write the new image data to the newly named image, leaving the original alone (and failing rather than overwriting another image)
+						File swappedImage = Files.createFile(new File(outputDirectory, newFileName + fileExtension).toPath()).toFile();
+						try
+							{
+								output.writeTo(swappedImage);
+							}
+						catch (IOException e)
+							{
+								swappedImage.delete();
+								throw e;
+							}
+
+						return swappedImage;
+					}
+			}
+
+		/**
+		 * This method extracts data encrypted into an image using the encrypt method. It assumes the default seed was used to generate the neural network
+		 * unless another seed is explicitly supplied in the command line.
+		 *
+		 * @param carrier
+		 *            - The pixel data of an image containing encrypted data
+		 *
+		 */
+		String getCurrentlyEncryptedMessage(Carrier carrier)
+			{
+				reader.reset();
+
+				// If no end was found this image probably never had a message encoded into it, and every character read is returned
+				return reader.getMessage(readMessage(carrier));
+			}
+
+		/**
+		 * Reads the characters held by the 4*4 squares of an image (or a band of an image) into the {@link #reader}, up until the end of the message.
+		 *
+		 * @return - true if the end of the message was found
+		 */
+		private boolean readMessage(Carrier carrier)
+			{
+				long blocksRead = reader.blocksRead;
+				boolean finished = reader.read(carrier);
+				trace.blocksDecoded += reader.blocksRead - blocksRead;
+
+				return finished;
+			}
+
+		/**
+		 * Writes a swapped image to a file, see {@link SwapCodec#save(File, File, String, ImageOutput)}.
+		 */
+		private interface ImageOutput
+			{
+				void writeTo(File file) throws IOException;
+			}
+	}
@@ -0,0 +1,76 @@
+package encryption;
+
+import java.awt.GraphicsEnvironment;
+import java.io.File;
+
+import javax.swing.JFileChooser;
+import javax.swing.JOptionPane;
+import javax.swing.filechooser.FileNameExtensionFilter;
+
+/**
+ * SWAP_MESSAGES mode, the only mode with any dialogs. It is kept apart from {@link Encryption} so that every other mode runs without loading a single
+ * Swing class, and so works on a headless machine.
+ */
+class SwapDialog
+	{
+		private SwapDialog()
+			{
+			}
+
+		/**
+		 * The user is asked to select an image file using a {@link JFileChooser}, then that image has any internal message decrypted into its new filename and
+		 * its old filename encrypted into it as a message. This repeats until the user doesn't choose an image.
+		 *
+		 * @param n
+		 *            - the {@link Network} that will be used to read and write encoded information from and to the chosen image files
+		 * @param currentDirectory
+		 *            - where the file chooser starts
+		 */
+		static void show(Network n, File currentDirectory)
+			{
+				if (GraphicsEnvironment.isHeadless())
+					{
+						System.err.println("SWAP_MESSAGES mode needs a display, swap images without one with -Dmode=batch -Dinput=<i>a directory</i>");
+						return;
+					}
+
+				// Sweep the network once up front (or read back the dictionary saved last time) so that encoding a character is a simple look up
+				SwapCodec codec = new SwapCodec(DictionaryCache.get(n), n.r);
+
+				boolean goAgain = true;
+
+				// Go until the user does not chose an image
+				while (goAgain)
+					{
+						// Code to load the desired
+						JFileChooser chooser = new JFileChooser(currentDirectory);
+						FileNameExtensionFilter filter = new FileNameExtensionFilter("Certain Image types only", "jpg", "png");
+						chooser.setFileFilter(filter);
+
+						// if the user chose an image
+						int returnVal = chooser.showOpenDialog(null);
+						if (returnVal == JFileChooser.APPROVE_OPTION)
+							{
+								try
+									{
+										// Get the user to select an image file
+										File imageFile = chooser.getSelectedFile();
+
+										/*
+										 * Swap the filename with the encrypted message in the image, note that gibberish will be extracted from any file with
+										 * no message previously encoded into it
+										 */
+										codec.swapInformation(imageFile, null);
+									}
+								catch (Exception e)
+									{
+										JOptionPane.showMessageDialog(null, "Sorry but that image doesn't work!", "Error", JOptionPane.ERROR_MESSAGE);
+										e.printStackTrace();
+									}
+							}
+						// else quit the program
+						else
+							goAgain = false;
+					}
+			}
+	}
@@ -0,0 +1,440 @@
+package encryption;
+
+import java.io.File;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Measures where the time goes when an image is swapped, see {@link SwapCodec#swapInformation(File, File)}.
+ * <p>
+ * There are three ways to see the measurements, and none of them cost more than a check of a flag per phase of a swap while they are all turned off:
+ * <ul>
+ * <li>Java Flight Recorder events, an encryption.SwapPhase event for each {@link Phase} of each image and an encryption.Swap event for each image, which
+ * are recorded whenever a recording is running (for example with -XX:StartFlightRecording).</li>
+ * <li>This class as a JMX MXBean, counting the images, blocks and bytes of every swap and keeping a histogram of how long each phase took, registered when
+ * run with -Dmetrics=true.</li>
+ * <li>A line of JSON for each image printed to System.err, when run with -Dsummary=true.</li>
+ * </ul>
+ */
+class SwapMetrics implements SwapMetricsMXBean
+	{
+		/**
+		 * The parts of a swap that are timed, ENCODE being both picking the startingNodeStates of the new message and rewriting the image with them and
+		 * random data. In an image too big to swap all at once every phase happens once for every band of rows, and the time of each is added up.
+		 */
+		enum Phase
+			{
+				READ, DECODE, ENCODE, WRITE;
+
+				final String label = name().toLowerCase(Locale.ROOT);
+			}
+
+		/**
+		 * The number of buckets in each latency histogram, the last bucket holds everything over 2^30 microseconds (around 18 minutes).
+		 */
+		private static final int BUCKETS = 32;
+
+		/**
+		 * The measurements of every swap, which are only added to once {@link #register()} has been called.
+		 */
+		static final SwapMetrics METRICS = new SwapMetrics();
+
+		/**
+		 * Whether every swap is added to {@link #METRICS} (set with -Dmetrics=true, see {@link #register()}).
+		 */
+		static volatile boolean ENABLED = false;
+
+		/**
+		 * Whether a line of JSON is printed to System.err for each image swapped (set with -Dsummary=true).
+		 */
+		static volatile boolean SUMMARY = false;
+
+		private final LongAdder imagesSwapped = new LongAdder(), imagesFailed = new LongAdder();
+		private final LongAdder blocksDecoded = new LongAdder(), blocksEncoded = new LongAdder(), blocksFilled = new LongAdder();
+		private final LongAdder bytesRead = new LongAdder(), bytesWritten = new LongAdder();
+
+		/**
+		 * A row of {@link #BUCKETS} for each {@link Phase}, followed by a row for the whole swap.
+		 */
+		private final AtomicLongArray histograms = new AtomicLongArray((Phase.values().length + 1) * BUCKETS);
+		private final AtomicLongArray totalNanos = new AtomicLongArray(Phase.values().length + 1);
+
+		private SwapMetrics()
+			{
+			}
+
+		/**
+		 * Starts adding every swap to {@link #METRICS} and registers it with the platform MBean server, so that it can be read with JConsole or any other JMX
+		 * client.
+		 */
+		static synchronized void register()
+			{
+				if (ENABLED)
+					return;
+
+				try
+					{
+						ManagementFactory.getPlatformMBeanServer().registerMBean(METRICS, new ObjectName("encryption:type=SwapMetrics"));
+					}
+				catch (JMException e)
+					{
+						throw new IllegalStateException("Could not register the swap metrics", e);
+					}
+
+				ENABLED = true;
+			}
+
+		private void record(Trace trace, long nanos)
+			{
+				(trace.failed ? imagesFailed : imagesSwapped).increment();
+				blocksDecoded.add(trace.blocksDecoded);
+				blocksEncoded.add(trace.blocksEncoded);
+				blocksFilled.add(trace.blocksFilled);
+				bytesRead.add(trace.bytesRead);
+				bytesWritten.add(trace.bytesWritten);
+
+				for (Phase phase : Phase.values())
+					if (trace.nanos[phase.ordinal()] > 0)
+						addLatency(phase.ordinal(), trace.nanos[phase.ordinal()]);
+				addLatency(Phase.values().length, nanos);
+			}
+
+		private void addLatency(int row, long nanos)
+			{
+				long micros = nanos / 1000;
+				int bucket = Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros));
+				histograms.incrementAndGet(row * BUCKETS + bucket);
+				totalNanos.addAndGet(row, nanos);
+			}
+
+		@Override
+		public long getImagesSwapped()
+			{
+				return imagesSwapped.sum();
+			}
+
+		@Override
+		public long getImagesFailed()
+			{
+				return imagesFailed.sum();
+			}
+
+		@Override
+		public long getBlocksDecoded()
+			{
+				return blocksDecoded.sum();
+			}
+
+		@Override
+		public long getBlocksEncoded()
+			{
+				return blocksEncoded.sum();
+			}
+
+		@Override
+		public long getBlocksFilled()
+			{
+				return blocksFilled.sum();
+			}
+
+		@Override
+		public long getBytesRead()
+			{
+				return bytesRead.sum();
+			}
+
+		@Override
+		public long getBytesWritten()
+			{
+				return bytesWritten.sum();
+			}
+
+		@Override
+		public Map<String, long[]> getLatencyHistograms()
+			{
+				Map<String, long[]> histograms = new LinkedHashMap<String, long[]>();
+				for (int row = 0; row <= Phase.values().length; row++)
+					histograms.put(getRowName(row), getHistogram(row));
+
+				return histograms;
+			}
+
+		@Override
+		public Map<String, Double> getMeanMillis()
+			{
+				Map<String, Double> means = new LinkedHashMap<String, Double>();
+				for (int row = 0; row <= Phase.values().length; row++)
+					{
+						long count = 0;
+						for (long c : getHistogram(row))
+							count += c;
+
+						means.put(getRowName(row), count == 0 ? 0 : totalNanos.get(row) / 1e6 / count);
+					}
+
+				return means;
+			}
+
+		@Override
+		public Map<String, Double> getP99Millis()
+			{
+				Map<String, Double> percentiles = new LinkedHashMap<String, Double>();
+				for (int row = 0; row <= Phase.values().length; row++)
+					{
+						long[] histogram = getHistogram(row);
+						long count = 0;
+						for (long c : histogram)
+							count += c;
+
+						// The first bucket that, along with every bucket below it, holds at least 99% of the images
+						int bucket = 0;
+						long seen = histogram[0];
+						while (bucket < BUCKETS - 1 && seen * 100 < count * 99)
+							seen += histogram[++bucket];
+
+						percentiles.put(getRowName(row), count == 0 ? 0 : (1L << bucket) / 1e3);
+					}
+
+				return percentiles;
+			}
+
+		@Override
+		public void reset()
+			{
+				for (LongAdder counter : new LongAdder[] { imagesSwapped, imagesFailed, blocksDecoded, blocksEncoded, blocksFilled, bytesRead, bytesWritten })
+					counter.reset();
+				for (int i = 0; i < histograms.length(); i++)
+					histograms.set(i, 0);
+				for (int i = 0; i < totalNanos.length(); i++)
+					totalNanos.set(i, 0);
+			}
+
+		private long[] getHistogram(int row)
+			{
+				long[] histogram = new long[BUCKETS];
+				for (int i = 0; i < BUCKETS; i++)
+					histogram[i] = histograms.get(row * BUCKETS + i);
+
+				return histogram;
+			}
+
+		private static String getRowName(int row)
+			{
+				return row < Phase.values().length ? Phase.values()[row].label : "total";
+			}
+
+		/**
+		 * Measures a single swap at a time, each {@link SwapCodec} has its own which it reuses for every image it swaps.
+		 * <p>
+		 * Nothing is timed unless the swap is going to be recorded somewhere, which is decided when it {@link #start(File)}s, but the counts of blocks and
+		 * bytes are always kept as they cost no more than the check would.
+		 */
+		static class Trace
+			{
+				private boolean timed, events;
+				private boolean failed;
+				private String image;
+				private long startTime, phaseStartTime;
+				private final long[] nanos = new long[Phase.values().length];
+				private SwapEvent swapEvent;
+				private PhaseEvent phaseEvent;
+
+				long blocksDecoded, blocksEncoded, blocksFilled, bytesRead, bytesWritten;
+
+				/**
+				 * Starts measuring the swap of an image, forgetting about the last one.
+				 */
+				void start(File imageFile)
+					{
+						swapEvent = new SwapEvent();
+						events = swapEvent.isEnabled() || new PhaseEvent().isEnabled();
+						timed = events || ENABLED || SUMMARY;
+
+						image = imageFile.getPath();
+						failed = true;
+						blocksDecoded = blocksEncoded = blocksFilled = bytesRead = bytesWritten = 0;
+						Arrays.fill(nanos, 0);
+
+						if (timed)
+							{
+								swapEvent.begin();
+								startTime = System.nanoTime();
+							}
+					}
+
+				void begin(Phase phase)
+					{
+						if (!timed)
+							return;
+
+						if (events)
+							{
+								phaseEvent = new PhaseEvent();
+								phaseEvent.begin();
+							}
+						phaseStartTime = System.nanoTime();
+					}
+
+				void end(Phase phase)
+					{
+						if (!timed)
+							return;
+
+						nanos[phase.ordinal()] += System.nanoTime() - phaseStartTime;
+
+						if (phaseEvent != null)
+							{
+								phaseEvent.end();
+								if (phaseEvent.shouldCommit())
+									{
+										phaseEvent.image = image;
+										phaseEvent.phase = phase.label;
+										phaseEvent.commit();
+									}
+								phaseEvent = null;
+							}
+					}
+
+				/**
+				 * Finishes measuring the swap of an image and records it wherever it is wanted.
+				 *
+				 * @param swappedImage
+				 *            - the image the swap produced, or null if the swap failed
+				 */
+				void finish(File swappedImage)
+					{
+						if (!timed)
+							return;
+
+						long nanos = System.nanoTime() - startTime;
+						failed = swappedImage == null;
+						if (!failed)
+							bytesWritten = swappedImage.length();
+
+						if (events)
+							{
+								swapEvent.end();
+								if (swapEvent.shouldCommit())
+									{
+										swapEvent.image = image;
+										swapEvent.swappedImage = failed ? null : swappedImage.getPath();
+										swapEvent.blocksDecoded = blocksDecoded;
+										swapEvent.blocksEncoded = blocksEncoded;
+										swapEvent.blocksFilled = blocksFilled;
+										swapEvent.bytesRead = bytesRead;
+										swapEvent.bytesWritten = bytesWritten;
+										swapEvent.commit();
+									}
+							}
+
+						if (ENABLED)
+							METRICS.record(this, nanos);
+
+						if (SUMMARY)
+							printSummary(System.err, swappedImage, nanos);
+					}
+
+				private void printSummary(PrintStream out, File swappedImage, long nanos)
+					{
+						StringBuilder line = new StringBuilder("{\"image\":");
+						appendString(line, image);
+						line.append(",\"swappedImage\":");
+						if (failed)
+							line.append("null");
+						else
+							appendString(line, swappedImage.getPath());
+
+						line.append(String.format(Locale.ROOT, ",\"totalMillis\":%.3f", nanos / 1e6));
+						for (Phase phase : Phase.values())
+							line.append(String.format(Locale.ROOT, ",\"%sMillis\":%.3f", phase.label, this.nanos[phase.ordinal()] / 1e6));
+
+						line.append(",\"blocksDecoded\":").append(blocksDecoded);
+						line.append(",\"blocksEncoded\":").append(blocksEncoded);
+						line.append(",\"blocksFilled\":").append(blocksFilled);
+						line.append(",\"bytesRead\":").append(bytesRead);
+						line.append(",\"bytesWritten\":").append(bytesWritten);
+						line.append('}');
+
+						// One println per image so that lines from different threads don't get mixed up
+						out.println(line);
+					}
+
+				private static void appendString(StringBuilder line, String s)
+					{
+						line.append('"');
+						for (int i = 0; i < s.length(); i++)
+							{
+								char c = s.charAt(i);
+								if (c == '"' || c == '\\')
+									line.append('\\').append(c);
+								else if (c < 0x20)
+									line.append(String.format("\\u%04x", (int) c));
+								else
+									line.append(c);
+							}
+						line.append('"');
+					}
+			}
+
+		@Name("encryption.SwapPhase")
+		@Label("Swap Phase")
+		@Description("One phase of swapping the message of an image with its file name")
+		@Category("Encryption")
+		@StackTrace(false)
+		static class PhaseEvent extends Event
+			{
+				@Label("Image")
+				String image;
+
+				@Label("Phase")
+				String phase;
+			}
+
+		@Name("encryption.Swap")
+		@Label("Swap")
+		@Description("Swapping the message of an image with its file name")
+		@Category("Encryption")
+		@StackTrace(false)
+		static class SwapEvent extends Event
+			{
+				@Label("Image")
+				String image;
+
+				@Label("Swapped Image")
+				String swappedImage;
+
+				@Label("Blocks Decoded")
+				long blocksDecoded;
+
+				@Label("Blocks Encoded")
+				long blocksEncoded;
+
+				@Label("Blocks Filled")
+				long blocksFilled;
+
+				@Label("Bytes Read")
+				@DataAmount
+				long bytesRead;
+
+				@Label("Bytes Written")
+				@DataAmount
+				long bytesWritten;
+			}
+	}
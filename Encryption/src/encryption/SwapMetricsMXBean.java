@@ -0,0 +1,43 @@
+package encryption;
+
+import java.util.Map;
+
+/**
+ * The counters and latencies of every image swapped since the JVM started (or since {@link #reset()}), registered as encryption:type=SwapMetrics when
+ * run with -Dmetrics=true. It has to be public for JMX to read it.
+ */
+public interface SwapMetricsMXBean
+	{
+		long getImagesSwapped();
+
+		long getImagesFailed();
+
+		long getBlocksDecoded();
+
+		long getBlocksEncoded();
+
+		long getBlocksFilled();
+
+		long getBytesRead();
+
+		long getBytesWritten();
+
+		/**
+		 * @return - for each phase of a swap (and "total"), the number of images whose phase took under 2^i microseconds in bucket i, and at least
+		 *         2^(i-1) microseconds for every bucket after the first
+		 */
+		Map<String, long[]> getLatencyHistograms();
+
+		/**
+		 * @return - the mean time each phase of a swap (and "total") took, in milliseconds
+		 */
+		Map<String, Double> getMeanMillis();
+
+		/**
+		 * @return - the time within which 99% of the images finished each phase of a swap (and "total"), in milliseconds, rounded up to the top of its
+		 *         bucket of {@link #getLatencyHistograms()}
+		 */
+		Map<String, Double> getP99Millis();
+
+		void reset();
+	}
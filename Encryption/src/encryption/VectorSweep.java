@@ -0,0 +1,147 @@
+package encryption;
+
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Runs a block of startingNodeStates through a {@link Network} at once using the Vector API, one startingNodeStates in each lane of a vector.
+ * <p>
+ * The nodes that fired in each level are kept as 1s and 0s and every weight is multiplied by them, so the weight of a connection from a node that didn't fire
+ * adds 0 and leaves the state exactly as it was (apart from the sign of a zero, and only the size of a state is ever used). The weights are added in the same order as
+ * {@link Network#getCharacterIndex(int, float[])} adds them so every lane ends up with exactly the same states, and exactly the same character.
+ * <p>
+ * This class needs the jdk.incubator.vector module (java --add-modules jdk.incubator.vector), {@link Network} only loads it if it is available.
+ */
+class VectorSweep implements Network.Sweep
+	{
+		private static final VectorSpecies<Float> FLOATS = FloatVector.SPECIES_PREFERRED;
+		/**
+		 * The same shape as {@link #FLOATS}, so an int vector has exactly one lane for each float lane.
+		 */
+		private static final VectorSpecies<Integer> INTS = IntVector.SPECIES_PREFERRED;
+		private static final int LANES = FLOATS.length();
+
+		/**
+		 * The number of nodes in the next level that are added up at once, sharing each load of whether a node in the previous level fired.
+		 */
+		private static final int UNROLL = 4;
+
+		/**
+		 * Two levels worth of which nodes fired (1 or 0), one vector per node, and the character index of each lane of the final level. The final level
+		 * keeps how close each node is to its goal instead.
+		 */
+		private static final ThreadLocal<float[]> FIRED = ThreadLocal.withInitial(() -> new float[Network.SCRATCH_SIZE * LANES]);
+		private static final ThreadLocal<int[]> RESULTS = ThreadLocal.withInitial(() -> new int[LANES]);
+
+		/**
+		 * Refuses to be built on a processor without real vector registers, where the scalar loop is faster.
+		 */
+		VectorSweep()
+			{
+				if (LANES < 4)
+					throw new UnsupportedOperationException("Only " + LANES + " float lanes");
+			}
+
+		@Override
+		public void getCharacterIndices(Network n, int firstPattern, int count, byte[] indices)
+			{
+				float[] fired = FIRED.get();
+				int[] results = RESULTS.get();
+
+				int pattern = firstPattern;
+				int end = firstPattern + count;
+
+				for (; pattern <= end - LANES; pattern += LANES)
+					{
+						getCharacterIndices(n, pattern, fired, results);
+						for (int lane = 0; lane < LANES; lane++)
+							indices[pattern - firstPattern + lane] = (byte) results[lane];
+					}
+
+				// Anything that doesn't fill a whole vector is done one at a time
+				float[] scratch = new float[Network.SCRATCH_SIZE];
+				for (; pattern < end; pattern++)
+					indices[pattern - firstPattern] = (byte) n.getCharacterIndex(pattern, scratch);
+			}
+
+		/**
+		 * The vector equivalent of {@link Network#getCharacterIndex(int, float[])}, for the {@link #LANES} startingNodeStates starting at firstPattern.
+		 */
+		private static void getCharacterIndices(Network n, int firstPattern, float[] fired, int[] results)
+			{
+				final int nodes = Network.NODES_PER_LEVEL;
+				final FloatVector zero = FloatVector.zero(FLOATS);
+
+				// Set up the starting nodes exactly as the scalar network does, from the bits of each lane's startingNodeStates
+				IntVector pattern = IntVector.zero(INTS).addIndex(1).add(firstPattern);
+				IntVector firing = pattern.not().and(n.idleFiring);
+				if (0 < n.leeway)
+					firing = firing.or(pattern);
+
+				for (int y = 0; y < nodes; y++)
+					((FloatVector) firing.lanewise(VectorOperators.LSHR, y).and(1).convert(VectorOperators.I2F, 0)).intoArray(fired, y * LANES);
+
+				int current = 0;
+
+				for (int z = 1; z < n.levels; z++)
+					{
+						int next = nodes * LANES - current;
+						boolean lastLevel = z == n.levels - 1;
+
+						for (int x = 0; x < nodes; x += UNROLL)
+							{
+								FloatVector state0 = zero, state1 = zero, state2 = zero, state3 = zero;
+
+								// Nodes are added in order so the states are exactly the same as adding up the weights one node at a time
+								for (int y = 0; y < nodes; y++)
+									{
+										FloatVector didFire = FloatVector.fromArray(FLOATS, fired, current + y * LANES);
+										int connections = ((((z - 1) * nodes) + y) * nodes) + x;
+										state0 = didFire.fma(FloatVector.broadcast(FLOATS, n.weights[connections]), state0);
+										state1 = didFire.fma(FloatVector.broadcast(FLOATS, n.weights[connections + 1]), state1);
+										state2 = didFire.fma(FloatVector.broadcast(FLOATS, n.weights[connections + 2]), state2);
+										state3 = didFire.fma(FloatVector.broadcast(FLOATS, n.weights[connections + 3]), state3);
+									}
+
+								storeState(n, z, x, state0, lastLevel, fired, next);
+								storeState(n, z, x + 1, state1, lastLevel, fired, next);
+								storeState(n, z, x + 2, state2, lastLevel, fired, next);
+								storeState(n, z, x + 3, state3, lastLevel, fired, next);
+							}
+
+						current = next;
+					}
+
+				// Find which of the nodes in the final level is closest to its goal value
+				FloatVector closestNodeNum = zero;
+				FloatVector closestNodeValue = FloatVector.fromArray(FLOATS, fired, current);
+
+				for (int i = 1; i < nodes; i++)
+					{
+						// Strictly less than, so the lowest numbered node wins a tie as it does in the scalar network
+						FloatVector difference = FloatVector.fromArray(FLOATS, fired, current + i * LANES);
+						VectorMask<Float> closer = difference.compare(VectorOperators.LT, closestNodeValue);
+						closestNodeValue = closestNodeValue.blend(difference, closer);
+						closestNodeNum = closestNodeNum.blend(i, closer);
+					}
+
+				((IntVector) closestNodeNum.convert(VectorOperators.F2I, 0)).intoArray(results, 0);
+			}
+
+		/**
+		 * Works out how close node x is to its goal in each lane, storing whether it fired, or in the final level the difference itself so the closest node
+		 * can be found once the whole level is done.
+		 */
+		private static void storeState(Network n, int z, int x, FloatVector state, boolean lastLevel, float[] fired, int offset)
+			{
+				FloatVector difference = state.abs().neg().add(n.goals[(z * Network.NODES_PER_LEVEL) + x]).abs();
+
+				if (lastLevel)
+					difference.intoArray(fired, offset + x * LANES);
+				else
+					FloatVector.zero(FLOATS).blend(1, difference.compare(VectorOperators.LT, n.leeway)).intoArray(fired, offset + x * LANES);
+			}
+	}
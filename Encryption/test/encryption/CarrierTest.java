@@ -0,0 +1,91 @@
+package encryption;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks that {@link Carrier#rewrite(char[], int, Dictionary, SplittableRandom, SplittableRandom)} writes the same pixels however many threads rewrite
+ * the bands, and that the random data after the message only depends on the fill stream.
+ */
+class CarrierTest
+	{
+		private static Dictionary dictionary;
+
+		@BeforeAll
+		static void buildDictionary()
+			{
+				dictionary = new Dictionary(new Network(1198662804, 0.07f, 3));
+			}
+
+		private static char[] letters(String message)
+			{
+				return ("x" + message + "{").toCharArray();
+			}
+
+		/**
+		 * @return - the pixels of an image 5 bands of squares high, rewritten on a pool of the given number of threads
+		 */
+		private static int[] rewrite(int threads, char[] letters, long patternSeed, long fillSeed) throws Exception
+			{
+				BufferedImage image = new BufferedImage(203, 300, BufferedImage.TYPE_INT_RGB);
+				Carrier carrier = Carrier.of(image);
+
+				// A parallel stream started from within a pool runs on that pool's threads
+				ForkJoinPool pool = new ForkJoinPool(threads);
+				try
+					{
+						pool.submit(() -> carrier.rewrite(letters, 0, dictionary, new SplittableRandom(patternSeed), new SplittableRandom(fillSeed))).get();
+					}
+				finally
+					{
+						pool.shutdown();
+					}
+
+				return ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+			}
+
+		@Test
+		void sameWhateverTheParallelism() throws Exception
+			{
+				// Long enough that the message runs into the second band
+				char[] letters = letters("the quick brown fox jumps over the lazy dog ".repeat(20));
+
+				int[] one = rewrite(1, letters, 1, 2);
+				assertArrayEquals(one, rewrite(3, letters, 1, 2));
+				assertArrayEquals(one, rewrite(8, letters, 1, 2));
+			}
+
+		@Test
+		void fillOnlyChangesTheSquaresAfterTheMessage() throws Exception
+			{
+				char[] letters = letters("meet me at noon");
+				int[] first = rewrite(2, letters, 1, 2), second = rewrite(2, letters, 1, 3);
+
+				Carrier a = Carrier.of(imageOf(first)), b = Carrier.of(imageOf(second));
+				int differences = 0;
+				for (int y = 0; y < a.blocksHigh; y++)
+					for (int x = 0; x < a.blocksWide; x++)
+						if ((y * a.blocksWide) + x < letters.length)
+							assertEquals(a.readBlock(x, y), b.readBlock(x, y));
+						else if (a.readBlock(x, y) != b.readBlock(x, y))
+							differences++;
+
+				assertNotEquals(0, differences);
+			}
+
+		private static BufferedImage imageOf(int[] pixels)
+			{
+				BufferedImage image = new BufferedImage(203, 300, BufferedImage.TYPE_INT_RGB);
+				image.getRaster().setDataElements(0, 0, 203, 300, pixels);
+				return image;
+			}
+	}
@@ -0,0 +1,128 @@
+package encryption;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Checks that a {@link Dictionary} saved by {@link DictionaryCache} is mapped back in unchanged, and that a file that is corrupt or for another
+ * {@link Network} is rebuilt rather than trusted.
+ * <p>
+ * A dictionary mapped from its file has direct buffers and one built in memory doesn't, which tells the two apart. Nothing is kept in memory between calls,
+ * so every call goes to the file.
+ */
+class DictionaryCacheTest
+	{
+		@TempDir
+		File directory;
+
+		private int capacity;
+
+		@BeforeEach
+		void keepNothingInMemory()
+			{
+				capacity = DictionaryCache.CAPACITY;
+				DictionaryCache.CAPACITY = 0;
+			}
+
+		@AfterEach
+		void restoreCapacity()
+			{
+				DictionaryCache.CAPACITY = capacity;
+			}
+
+		private static Network network(int seed)
+			{
+				return new Network(seed, 0.07f, 1);
+			}
+
+		private File file(Network n)
+			{
+				return new File(directory, "dictionary_" + n.seed + "_" + Integer.toHexString(Float.floatToIntBits(n.leeway)) + "_" + n.levels + ".bin");
+			}
+
+		private static void assertSame(Dictionary expected, Dictionary actual)
+			{
+				assertEquals(expected.letters.duplicate().clear(), actual.letters.duplicate().clear());
+				assertArrayEquals(expected.offsets, actual.offsets);
+				assertEquals(expected.patterns.duplicate().clear(), actual.patterns.duplicate().clear());
+			}
+
+		@Test
+		void savesAndMapsBack() throws IOException
+			{
+				Network n = network(11);
+				Dictionary built = DictionaryCache.get(n, directory);
+				assertFalse(built.letters.isDirect());
+				assertTrue(file(n).isFile());
+
+				Dictionary mapped = DictionaryCache.get(n, directory);
+				assertTrue(mapped.letters.isDirect());
+				assertSame(new Dictionary(n), mapped);
+
+				for (int pattern = 0; pattern < 1 << Network.STARTING_NODES; pattern++)
+					assertEquals(built.getLetter(pattern), mapped.getLetter(pattern));
+			}
+
+		@Test
+		void corruptFileIsRebuilt() throws IOException
+			{
+				Network n = network(12);
+				DictionaryCache.get(n, directory);
+				byte[] saved = Files.readAllBytes(file(n).toPath());
+
+				// One bit of the patterns, which only the checksum notices
+				byte[] corrupt = saved.clone();
+				corrupt[corrupt.length - 100] ^= 1;
+				Files.write(file(n).toPath(), corrupt);
+
+				Dictionary rebuilt = DictionaryCache.get(n, directory);
+				assertFalse(rebuilt.letters.isDirect());
+				assertSame(new Dictionary(n), rebuilt);
+				assertArrayEquals(saved, Files.readAllBytes(file(n).toPath()));
+			}
+
+		@Test
+		void truncatedFileIsRebuilt() throws IOException
+			{
+				Network n = network(13);
+				DictionaryCache.get(n, directory);
+				byte[] saved = Files.readAllBytes(file(n).toPath());
+				Files.write(file(n).toPath(), Arrays.copyOf(saved, saved.length - 1));
+
+				assertFalse(DictionaryCache.get(n, directory).letters.isDirect());
+				assertArrayEquals(saved, Files.readAllBytes(file(n).toPath()));
+			}
+
+		@Test
+		void fileForAnotherNetworkIsRebuilt() throws IOException
+			{
+				Network a = network(14), b = network(15);
+				DictionaryCache.get(a, directory);
+				Files.copy(file(a).toPath(), file(b).toPath());
+
+				Dictionary rebuilt = DictionaryCache.get(b, directory);
+				assertFalse(rebuilt.letters.isDirect());
+				assertSame(new Dictionary(b), rebuilt);
+				assertTrue(DictionaryCache.get(b, directory).letters.isDirect());
+			}
+
+		@Test
+		void noDirectoryBuildsInMemory()
+			{
+				Network n = network(16);
+				assertFalse(DictionaryCache.get(n, null).letters.isDirect());
+				assertFalse(file(n).exists());
+			}
+	}
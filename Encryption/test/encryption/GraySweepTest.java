@@ -0,0 +1,61 @@
+package encryption;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks that {@link GraySweep} and {@link VectorSweep} produce exactly the same character for every startingNodeStates as running the network on each
+ * one with {@link Network#getCharacterIndex(int, float[])}.
+ */
+class GraySweepTest
+	{
+		private static final int PATTERNS = 1 << Network.STARTING_NODES;
+
+		private static byte[] scalar(Network n)
+			{
+				float[] scratch = new float[Network.SCRATCH_SIZE];
+				byte[] indices = new byte[PATTERNS];
+				for (int pattern = 0; pattern < PATTERNS; pattern++)
+					indices[pattern] = (byte) n.getCharacterIndex(pattern, scratch);
+				return indices;
+			}
+
+		private static Network[] networks()
+			{
+				return new Network[] { new Network(1198662804, 0.07f, 3), new Network(1198662804, 0.07f, 1), new Network(1198662804, 0.2f, 2),
+						new Network(12345, 0.01f, 4), new Network(-7, 0.5f, 3) };
+			}
+
+		@Test
+		void graySweepMatchesScalar()
+			{
+				for (Network n : networks())
+					{
+						byte[] indices = new byte[PATTERNS];
+						GraySweep.getCharacterIndices(n, indices);
+						assertArrayEquals(scalar(n), indices, "seed " + n.seed + ", leeway " + n.leeway + ", levels " + n.levels);
+					}
+			}
+
+		@Test
+		void vectorSweepMatchesScalar()
+			{
+				for (Network n : networks())
+					{
+						if (n.levels == 1)
+							continue;
+
+						byte[] expected = scalar(n), indices = new byte[PATTERNS];
+						new VectorSweep().getCharacterIndices(n, 0, PATTERNS, indices);
+						assertArrayEquals(expected, indices, "seed " + n.seed + ", leeway " + n.leeway + ", levels " + n.levels);
+
+						// A run that doesn't start at 0, or on a whole number of lanes
+						byte[] part = new byte[1001];
+						new VectorSweep().getCharacterIndices(n, 12345, part.length, part);
+						assertArrayEquals(Arrays.copyOfRange(expected, 12345, 12345 + part.length), part);
+					}
+			}
+	}
@@ -0,0 +1,296 @@
+package encryption;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.awt.color.ColorSpace;
+import java.awt.color.ICC_Profile;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.zip.CRC32;
+import java.util.zip.DeflaterOutputStream;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Checks that {@link ImageBands} reads every PNG file band by band into exactly the pixels {@link ImageIO#read(File)} gives, both the PNG files it decodes
+ * itself and those it leaves to an {@link javax.imageio.ImageReader}.
+ */
+class ImageBandsTest
+	{
+		private static final int[] BANDS = { 1, 7, 13, 4, 1000 };
+
+		@TempDir
+		Path directory;
+
+		/**
+		 * A PNG file written a byte at a time, so that the filters, chunks and bit depth are exactly those asked for.
+		 */
+		private static class Png
+			{
+				private final DataOutputStream out;
+				private final CRC32 crc = new CRC32();
+
+				Png(File file) throws IOException
+					{
+						out = new DataOutputStream(new FileOutputStream(file));
+						out.writeLong(0x89504E470D0A1A0AL);
+					}
+
+				void chunk(String type, byte[] data, int offset, int length) throws IOException
+					{
+						byte[] name = type.getBytes(StandardCharsets.US_ASCII);
+						crc.reset();
+						crc.update(name);
+						crc.update(data, offset, length);
+
+						out.writeInt(length);
+						out.write(name);
+						out.write(data, offset, length);
+						out.writeInt((int) crc.getValue());
+					}
+
+				void chunk(String type, byte[] data) throws IOException
+					{
+						chunk(type, data, 0, data.length);
+					}
+
+				void header(int width, int height, int bitDepth, int colourType) throws IOException
+					{
+						ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+						DataOutputStream header = new DataOutputStream(bytes);
+						header.writeInt(width);
+						header.writeInt(height);
+						header.write(new byte[] { (byte) bitDepth, (byte) colourType, 0, 0, 0 });
+						chunk("IHDR", bytes.toByteArray());
+					}
+
+				/**
+				 * Filters every row with the filter type row % 5, so each filter is used next to every other, and splits the compressed rows into IDAT chunks
+				 * of chunkSize bytes.
+				 */
+				void pixels(byte[][] rows, int bytesPerPixel, int chunkSize) throws IOException
+					{
+						ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+						try (DeflaterOutputStream deflater = new DeflaterOutputStream(compressed))
+							{
+								byte[] above = new byte[rows[0].length];
+								for (int y = 0; y < rows.length; y++)
+									{
+										int filter = y % 5;
+										deflater.write(filter);
+										deflater.write(filter(filter, rows[y], above, bytesPerPixel));
+										above = rows[y];
+									}
+							}
+
+						byte[] data = compressed.toByteArray();
+						for (int offset = 0; offset < data.length; offset += chunkSize)
+							chunk("IDAT", data, offset, Math.min(chunkSize, data.length - offset));
+					}
+
+				void end() throws IOException
+					{
+						chunk("IEND", new byte[0]);
+						out.close();
+					}
+			}
+
+		private static byte[] filter(int filter, byte[] row, byte[] above, int bpp)
+			{
+				byte[] filtered = new byte[row.length];
+				for (int i = 0; i < row.length; i++)
+					{
+						int a = i >= bpp ? row[i - bpp] & 0xFF : 0, b = above[i] & 0xFF, c = i >= bpp ? above[i - bpp] & 0xFF : 0;
+						int predicted;
+						switch (filter)
+							{
+								case 1:
+									predicted = a;
+									break;
+								case 2:
+									predicted = b;
+									break;
+								case 3:
+									predicted = (a + b) / 2;
+									break;
+								case 4:
+									int p = a + b - c, pa = Math.abs(p - a), pb = Math.abs(p - b), pc = Math.abs(p - c);
+									predicted = pa <= pb && pa <= pc ? a : pb <= pc ? b : c;
+									break;
+								default:
+									predicted = 0;
+							}
+						filtered[i] = (byte) (row[i] - predicted);
+					}
+				return filtered;
+			}
+
+		/**
+		 * Rows of smooth gradients and noise, bytesPerPixel bytes per pixel.
+		 */
+		private static byte[][] rows(int width, int height, int bytesPerPixel)
+			{
+				Random r = new Random(width * 7919 + height);
+				byte[][] rows = new byte[height][width * bytesPerPixel];
+				for (int y = 0; y < height; y++)
+					for (int i = 0; i < rows[y].length; i++)
+						rows[y][i] = (byte) (y % 3 == 0 ? r.nextInt() : i + (y * 3));
+				return rows;
+			}
+
+		/**
+		 * Reads the file with {@link ImageBands} in bands of {@link #BANDS} rows and compares every pixel with {@link ImageIO#read(File)}.
+		 *
+		 * @return - the name of the class that read the bands
+		 */
+		private static String assertSameAsImageIO(File file) throws IOException
+			{
+				BufferedImage expected = ImageIO.read(file);
+				try (ImageBands bands = ImageBands.open(file))
+					{
+						assertEquals(expected.getWidth(), bands.width);
+						assertEquals(expected.getHeight(), bands.height);
+
+						for (int i = 0; bands.nextRow < bands.height; i++)
+							{
+								int top = bands.nextRow;
+								BufferedImage band = bands.read(BANDS[i % BANDS.length]);
+								assertEquals(expected.getColorModel().hasAlpha(), band.getColorModel().hasAlpha());
+
+								for (int y = 0; y < band.getHeight(); y++)
+									for (int x = 0; x < band.getWidth(); x++)
+										{
+											int px = x, py = top + y;
+											assertEquals(expected.getRGB(x, top + y), band.getRGB(x, y), () -> file.getName() + " pixel " + px + ", " + py);
+										}
+							}
+
+						return bands.getClass().getSimpleName();
+					}
+			}
+
+		private File write(String name, int width, int height, int bitDepth, int colourType, int chunkSize, String... extraChunks) throws IOException
+			{
+				int bytesPerPixel = (colourType == 6 ? 4 : 3) * (bitDepth / 8);
+				File file = directory.resolve(name + ".png").toFile();
+
+				Png png = new Png(file);
+				png.header(width, height, bitDepth, colourType);
+				png.chunk("tEXt", "Comment\0skipped".getBytes(StandardCharsets.ISO_8859_1));
+				for (String chunk : extraChunks)
+					if (chunk.equals("tRNS"))
+						png.chunk("tRNS", new byte[] { 0, 1, 0, 2, 0, 3 });
+					else if (chunk.equals("iCCP"))
+						{
+							ByteArrayOutputStream profile = new ByteArrayOutputStream();
+							profile.write("sRGB\0\0".getBytes(StandardCharsets.ISO_8859_1));
+							try (DeflaterOutputStream deflater = new DeflaterOutputStream(profile))
+								{
+									deflater.write(ICC_Profile.getInstance(ColorSpace.CS_sRGB).getData());
+								}
+							png.chunk("iCCP", profile.toByteArray());
+						}
+				png.pixels(rows(width, height, bytesPerPixel), bytesPerPixel, chunkSize);
+				png.end();
+
+				return file;
+			}
+
+		@Test
+		void decodesRgbWithEveryFilter() throws IOException
+			{
+				assertEquals("PngBands", assertSameAsImageIO(write("rgb", 67, 45, 8, 2, 97)));
+			}
+
+		@Test
+		void decodesRgbaWithEveryFilter() throws IOException
+			{
+				assertEquals("PngBands", assertSameAsImageIO(write("rgba", 53, 38, 8, 6, 61)));
+			}
+
+		@Test
+		void decodesOneLargeChunk() throws IOException
+			{
+				assertEquals("PngBands", assertSameAsImageIO(write("large", 300, 90, 8, 2, Integer.MAX_VALUE)));
+			}
+
+		@Test
+		void decodesWhatPngBandWriterWrites() throws IOException
+			{
+				BufferedImage image = new BufferedImage(131, 70, BufferedImage.TYPE_INT_ARGB);
+				Random r = new Random(3);
+				for (int y = 0; y < image.getHeight(); y++)
+					for (int x = 0; x < image.getWidth(); x++)
+						image.setRGB(x, y, r.nextInt());
+
+				File file = directory.resolve("written.png").toFile();
+				try (PngBandWriter out = new PngBandWriter(file, image.getWidth(), image.getHeight()))
+					{
+						out.write(image);
+					}
+
+				assertEquals("PngBands", assertSameAsImageIO(file));
+			}
+
+		@Test
+		void leavesTransparencyToImageIO() throws IOException
+			{
+				assertEquals("RegionBands", assertSameAsImageIO(write("trns", 40, 30, 8, 2, 500, "tRNS")));
+			}
+
+		@Test
+		void leavesColourProfilesToImageIO() throws IOException
+			{
+				assertEquals("RegionBands", assertSameAsImageIO(write("iccp", 40, 30, 8, 6, 500, "iCCP")));
+			}
+
+		@Test
+		void leaves16BitToImageIO() throws IOException
+			{
+				assertEquals("RegionBands", assertSameAsImageIO(write("sixteen", 40, 30, 16, 2, 500)));
+				assertEquals("RegionBands", assertSameAsImageIO(write("sixteenalpha", 40, 30, 16, 6, 500)));
+			}
+
+		@Test
+		void leavesInterlacedToImageIO() throws IOException
+			{
+				BufferedImage image = new BufferedImage(45, 37, BufferedImage.TYPE_INT_RGB);
+				Random r = new Random(5);
+				for (int y = 0; y < image.getHeight(); y++)
+					for (int x = 0; x < image.getWidth(); x++)
+						image.setRGB(x, y, r.nextInt());
+
+				File file = directory.resolve("interlaced.png").toFile();
+				ImageWriter writer = ImageIO.getImageWritersByFormatName("png").next();
+				ImageWriteParam param = writer.getDefaultWriteParam();
+				param.setProgressiveMode(ImageWriteParam.MODE_DEFAULT);
+				try (ImageOutputStream out = ImageIO.createImageOutputStream(file))
+					{
+						writer.setOutput(out);
+						writer.write(null, new IIOImage(image, null, null), param);
+					}
+				finally
+					{
+						writer.dispose();
+					}
+
+				// The interlace method, the last byte of the IHDR chunk
+				assertEquals(1, Files.readAllBytes(file.toPath())[28]);
+				assertEquals("RegionBands", assertSameAsImageIO(file));
+			}
+	}
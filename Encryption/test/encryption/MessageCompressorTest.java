@@ -0,0 +1,60 @@
+package encryption;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks that the Huffman codes and the base 27 packing of {@link MessageCompressor} give back exactly what was compressed.
+ */
+class MessageCompressorTest
+	{
+		@Test
+		void englishRoundTrips()
+			{
+				String message = "the quick brown fox jumps over the lazy dog and keeps on running until it reaches the river";
+				String compressed = MessageCompressor.compress(message);
+
+				assertTrue(compressed.length() < message.length(), "English should come out shorter");
+				assertEquals(message, MessageCompressor.decompress(compressed));
+			}
+
+		@Test
+		void randomTextRoundTrips()
+			{
+				Random r = new Random(42);
+				for (int length = 0; length < 300; length += 7)
+					{
+						StringBuilder message = new StringBuilder();
+						for (int i = 0; i < length; i++)
+							message.append(MessageCompressor.ALPHABET.charAt(r.nextInt(MessageCompressor.ALPHABET.length())));
+
+						String compressed = MessageCompressor.compress(message);
+						for (int i = 0; i < compressed.length(); i++)
+							assertTrue(MessageCompressor.ALPHABET.indexOf(compressed.charAt(i)) >= 0);
+
+						if (compressed.length() <= MessageCompressor.MAX_COMPRESSED)
+							assertEquals(message.toString(), MessageCompressor.decompress(compressed));
+					}
+			}
+
+		@Test
+		void leadingSpacesAndSkippedCharactersRoundTrip()
+			{
+				assertEquals("  a b", MessageCompressor.decompress(MessageCompressor.compress("  A1a-! b")));
+				assertEquals("", MessageCompressor.decompress(MessageCompressor.compress("")));
+			}
+
+		@Test
+		void longerThanTheCapIsLeftAlone()
+			{
+				StringBuilder compressed = new StringBuilder();
+				while (compressed.length() <= MessageCompressor.MAX_COMPRESSED)
+					compressed.append("abcdefghijklmnopqrstuvwxyz ");
+
+				assertEquals(compressed.toString(), MessageCompressor.decompress(compressed));
+			}
+	}
@@ -0,0 +1,96 @@
+package encryption;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks that every header {@link MessageHeader#write(char[], int, boolean)} produces is read back, and that headers no writer produces are not.
+ */
+class MessageHeaderTest
+	{
+		private static char[] write(int length, boolean compressed)
+			{
+				char[] letters = new char[MessageHeader.BLOCKS];
+				MessageHeader.write(letters, length, compressed);
+				return letters;
+			}
+
+		@Test
+		void roundTrips()
+			{
+				int[] lengths = { 0, 1, 26, 27, 28, 511, 512, 513, 27 * 27 * 27, 1000000, MessageHeader.MAX_LENGTH };
+				for (int length : lengths)
+					{
+						MessageHeader header = MessageHeader.read(new String(write(length, false)));
+						assertNotNull(header, "length " + length);
+						assertEquals(length, header.length);
+						assertEquals(false, header.compressed);
+						assertEquals(MessageHeader.BLOCKS + length, header.getBlocks());
+
+						if (length <= MessageCompressor.MAX_COMPRESSED)
+							{
+								header = MessageHeader.read(new String(write(length, true)));
+								assertNotNull(header, "compressed length " + length);
+								assertEquals(length, header.length);
+								assertEquals(true, header.compressed);
+							}
+					}
+			}
+
+		@Test
+		void readsOnlyTheFirstBlocks()
+			{
+				MessageHeader header = MessageHeader.read(new String(write(3, false)) + "abc");
+				assertNotNull(header);
+				assertEquals(3, header.length);
+			}
+
+		@Test
+		void rejectsAnyOneCharacterChanged()
+			{
+				char[] letters = write(123456, false);
+				for (int i = 0; i < letters.length; i++)
+					for (char c : (MessageCompressor.ALPHABET + "{").toCharArray())
+						{
+							if (c == letters[i])
+								continue;
+
+							char[] changed = letters.clone();
+							changed[i] = c;
+							assertNull(MessageHeader.read(new String(changed)), "square " + i + " changed to '" + c + "'");
+						}
+			}
+
+		@Test
+		void rejectsCompressedLengthsNoWriterProduces()
+			{
+				assertNull(MessageHeader.read(new String(write(MessageCompressor.MAX_COMPRESSED + 1, true))));
+			}
+
+		@Test
+		void rejectsTooFewCharacters()
+			{
+				assertNull(MessageHeader.read(new String(write(5, false), 0, MessageHeader.BLOCKS - 1)));
+				assertNull(MessageHeader.read(""));
+			}
+
+		@Test
+		void writeRejectsLengthsThatDoNotFit()
+			{
+				assertThrows(IllegalArgumentException.class, () -> write(-1, false));
+				assertThrows(IllegalArgumentException.class, () -> write(MessageHeader.MAX_LENGTH + 1, false));
+			}
+
+		@Test
+		void getRows()
+			{
+				assertEquals(4, MessageHeader.getRows(1, 10));
+				assertEquals(4, MessageHeader.getRows(10, 10));
+				assertEquals(8, MessageHeader.getRows(11, 10));
+				assertEquals(Integer.MAX_VALUE, MessageHeader.getRows(1, 0));
+			}
+	}
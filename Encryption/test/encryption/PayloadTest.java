@@ -0,0 +1,98 @@
+package encryption;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks that a {@link Payload} is read back byte for byte, and that the whitening hides it from anyone without the seed.
+ */
+class PayloadTest
+	{
+		private static final int SEED = 1198662804;
+
+		private static byte[] bytes(int length)
+			{
+				byte[] payload = new byte[length];
+				new Random(length).nextBytes(payload);
+				return payload;
+			}
+
+		private static byte[] roundTrip(BufferedImage image, byte[] payload, boolean alpha, boolean compress) throws IOException
+			{
+				assertEquals(payload.length, Payload.embed(Carrier.of(image), new ByteArrayInputStream(payload), alpha, compress, SEED));
+
+				ByteArrayOutputStream out = new ByteArrayOutputStream();
+				assertEquals(payload.length, Payload.extract(Carrier.of(image), out, SEED));
+				return out.toByteArray();
+			}
+
+		@Test
+		void roundTrips() throws IOException
+			{
+				for (int length : new int[] { 0, 1, 1000, (int) Payload.getCapacity(97, 61, false) })
+					{
+						byte[] payload = bytes(length);
+						assertArrayEquals(payload, roundTrip(new BufferedImage(97, 61, BufferedImage.TYPE_3BYTE_BGR), payload, false, false), "length " + length);
+					}
+			}
+
+		@Test
+		void alphaRoundTrips() throws IOException
+			{
+				BufferedImage image = new BufferedImage(64, 64, BufferedImage.TYPE_INT_ARGB);
+				byte[] payload = bytes((int) Payload.getCapacity(64, 64, true));
+
+				assertTrue(payload.length > Payload.getCapacity(64, 64, false));
+				assertArrayEquals(payload, roundTrip(image, payload, true, false));
+			}
+
+		@Test
+		void compressedRoundTrips() throws IOException
+			{
+				// Far more than fits uncompressed, but it shrinks to almost nothing
+				byte[] payload = new byte[100000];
+				for (int i = 0; i < payload.length; i++)
+					payload[i] = (byte) ('a' + (i % 7));
+
+				assertArrayEquals(payload, roundTrip(new BufferedImage(100, 100, BufferedImage.TYPE_3BYTE_BGR), payload, false, true));
+			}
+
+		@Test
+		void tooBigIsRejected()
+			{
+				BufferedImage image = new BufferedImage(40, 40, BufferedImage.TYPE_3BYTE_BGR);
+				byte[] payload = bytes((int) Payload.getCapacity(40, 40, false) + 1);
+
+				assertThrows(IllegalArgumentException.class, () -> Payload.embed(Carrier.of(image), new ByteArrayInputStream(payload), false, false, SEED));
+			}
+
+		@Test
+		void whitened() throws IOException
+			{
+				// A payload of nothing but 0s still leaves the lowest bits half 1s, header included
+				BufferedImage image = new BufferedImage(128, 128, BufferedImage.TYPE_3BYTE_BGR);
+				Payload.embed(Carrier.of(image), new ByteArrayInputStream(new byte[4096]), false, false, SEED);
+
+				int ones = 0, bits = 0;
+				for (int y = 0; y < 128; y++)
+					for (int x = 0; x < 128; x++)
+						{
+							int rgb = image.getRGB(x, y);
+							ones += ((rgb >> 16) & 1) + ((rgb >> 8) & 1) + (rgb & 1);
+							bits += 3;
+						}
+				assertEquals(0.5, ones / (double) bits, 0.02);
+
+				assertThrows(IOException.class, () -> Payload.extract(Carrier.of(image), new ByteArrayOutputStream(), SEED + 1));
+			}
+	}
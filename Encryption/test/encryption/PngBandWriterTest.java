@@ -0,0 +1,122 @@
+package encryption;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.Adler32;
+
+import javax.imageio.ImageIO;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Checks that the PNGs written by {@link PngBandWriter}, with their segments deflated separately and stitched together, are read back by
+ * {@link ImageIO} exactly as they were written.
+ */
+class PngBandWriterTest
+	{
+		@TempDir
+		Path directory;
+
+		private static long adler(byte[] data, int from, int to)
+			{
+				Adler32 adler = new Adler32();
+				adler.update(data, from, to - from);
+				return adler.getValue();
+			}
+
+		@Test
+		void combineMatchesOneChecksum()
+			{
+				Random r = new Random(7);
+				byte[] data = new byte[200000];
+				r.nextBytes(data);
+
+				int[] splits = { 0, 1, 65520, 65521, 65522, 131042, 100000, data.length - 1, data.length };
+				for (int split : splits)
+					assertEquals(adler(data, 0, data.length), PngBandWriter.combine(adler(data, 0, split), adler(data, split, data.length), data.length - split),
+							"split at " + split);
+
+				// Every byte 0xFF pushes both sums as high as they go
+				Arrays.fill(data, (byte) 0xFF);
+				for (int split : splits)
+					assertEquals(adler(data, 0, data.length), PngBandWriter.combine(adler(data, 0, split), adler(data, split, data.length), data.length - split),
+							"0xFF split at " + split);
+			}
+
+		/**
+		 * An image with smooth areas (which suit the filters that predict from neighbouring pixels) and noise (which suits none of them).
+		 */
+		private static BufferedImage image(int width, int height, int type)
+			{
+				Random r = new Random(width * 31 + height);
+				BufferedImage image = new BufferedImage(width, height, type);
+				for (int y = 0; y < height; y++)
+					for (int x = 0; x < width; x++)
+						{
+							int argb = x < width / 2 ? ((x * 255 / width) << 16) | ((y * 255 / height) << 8) | ((x + y) & 0xFF) : r.nextInt();
+							image.setRGB(x, y, type == BufferedImage.TYPE_INT_ARGB ? argb : argb | 0xFF000000);
+						}
+				return image;
+			}
+
+		private void assertWritten(BufferedImage image, int[] bandHeights, int level, PngBandWriter.Filter filter, int threads) throws IOException
+			{
+				File file = directory.resolve("band" + level + filter + threads + ".png").toFile();
+				try (PngBandWriter out = new PngBandWriter(file, image.getWidth(), image.getHeight(), level, filter, threads))
+					{
+						int y = 0;
+						for (int rows : bandHeights)
+							{
+								out.write(image.getSubimage(0, y, image.getWidth(), rows));
+								y += rows;
+							}
+					}
+
+				BufferedImage read = ImageIO.read(file);
+				assertNotNull(read);
+				assertEquals(image.getWidth(), read.getWidth());
+				assertEquals(image.getHeight(), read.getHeight());
+				assertEquals(image.getColorModel().hasAlpha(), read.getColorModel().hasAlpha());
+				for (int y = 0; y < image.getHeight(); y++)
+					for (int x = 0; x < image.getWidth(); x++)
+						{
+							int px = x, py = y;
+							assertEquals(image.getRGB(x, y), read.getRGB(x, y), () -> "pixel " + px + ", " + py + " with " + filter + " at level " + level);
+						}
+			}
+
+		@Test
+		void manySegmentsInUnevenBands() throws IOException
+			{
+				// Around 1.5 MB of rows, so 3 segments, split into bands that don't line up with them
+				BufferedImage image = image(700, 730, BufferedImage.TYPE_3BYTE_BGR);
+				int[] bands = { 1, 300, 17, 412 };
+
+				assertWritten(image, bands, 1, PngBandWriter.Filter.ADAPTIVE, 4);
+				assertWritten(image, bands, 1, PngBandWriter.Filter.ADAPTIVE, 1);
+				assertWritten(image, bands, 9, PngBandWriter.Filter.PAETH, 2);
+				assertWritten(image, bands, 0, PngBandWriter.Filter.NONE, 3);
+			}
+
+		@Test
+		void everyFilter() throws IOException
+			{
+				BufferedImage image = image(61, 40, BufferedImage.TYPE_INT_RGB);
+				for (PngBandWriter.Filter filter : PngBandWriter.Filter.values())
+					assertWritten(image, new int[] { 13, 27 }, 6, filter, 2);
+			}
+
+		@Test
+		void alpha() throws IOException
+			{
+				assertWritten(image(300, 500, BufferedImage.TYPE_INT_ARGB), new int[] { 250, 250 }, 1, PngBandWriter.Filter.ADAPTIVE, 4);
+			}
+	}
@@ -0,0 +1,175 @@
+package encryption;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.SplittableRandom;
+
+import javax.imageio.ImageIO;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Checks that images go from PNG to {@link RawImage} and back without changing, and that messages and payloads are hidden in and read from a raw image in
+ * place the same as in a {@link BufferedImage}. The raw images are split between several mapped buffers, and are a height that isn't a multiple of 4.
+ */
+class RawImageTest
+	{
+		private static final int WIDTH = 67, HEIGHT = 50;
+
+		@TempDir
+		File directory;
+
+		private long segmentSize;
+		private StegoCodec codec;
+
+		@BeforeEach
+		void mapSeveralSegments()
+			{
+				segmentSize = RawImage.SEGMENT_SIZE;
+				RawImage.SEGMENT_SIZE = 16 * WIDTH * 4;
+				codec = new StegoCodec(1198662804, 0.07f, 3);
+			}
+
+		@AfterEach
+		void restoreSegmentSize()
+			{
+				RawImage.SEGMENT_SIZE = segmentSize;
+			}
+
+		private static BufferedImage image(boolean alpha)
+			{
+				BufferedImage image = new BufferedImage(WIDTH, HEIGHT, alpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+				Random r = new Random(alpha ? 1 : 2);
+				for (int y = 0; y < HEIGHT; y++)
+					for (int x = 0; x < WIDTH; x++)
+						image.setRGB(x, y, alpha ? r.nextInt() : r.nextInt() | 0xFF000000);
+				return image;
+			}
+
+		/**
+		 * Saves the image as a PNG file and converts it into a raw image, a few rows at a time.
+		 */
+		private File toRaw(BufferedImage image, String name) throws IOException
+			{
+				File png = new File(directory, name + ".png"), raw = new File(directory, name + ".raw");
+				ImageIO.write(image, "png", png);
+				RawImage.fromImage(png, raw, 7 * WIDTH * 4);
+				return raw;
+			}
+
+		/**
+		 * @return - the pixels of a raw image as getRGB() would return them
+		 */
+		private static int[] pixels(File file) throws IOException
+			{
+				try (RawImage raw = RawImage.open(file, false))
+					{
+						assertTrue(raw.segments.length > 1);
+
+						int[] pixels = new int[raw.width * raw.height];
+						byte[] row = new byte[raw.width * raw.channels];
+						for (int y = 0; y < raw.height; y++)
+							{
+								raw.readRow(y, row);
+								for (int x = 0, i = 0; x < raw.width; x++, i += raw.channels)
+									pixels[(y * raw.width) + x] = ((raw.channels == 4 ? row[i + 3] & 0xFF : 0xFF) << 24) | ((row[i] & 0xFF) << 16)
+											| ((row[i + 1] & 0xFF) << 8) | (row[i + 2] & 0xFF);
+							}
+						return pixels;
+					}
+			}
+
+		private static int[] pixels(BufferedImage image)
+			{
+				return image.getRGB(0, 0, image.getWidth(), image.getHeight(), null, 0, image.getWidth());
+			}
+
+		private void assertRoundTrips(boolean alpha) throws IOException
+			{
+				BufferedImage image = image(alpha);
+				File raw = toRaw(image, alpha ? "rgba" : "rgb");
+				assertArrayEquals(pixels(image), pixels(raw));
+
+				// A message in place, which only touches the lowest blue bit of the pixels in whole 4*4 squares
+				String message = "the message goes right across the segments ".repeat(5);
+				int hidden = codec.embedInPlace(raw, new StringReader(message));
+				assertEquals(message.substring(0, hidden), codec.extract(raw));
+
+				int[] before = pixels(image), after = pixels(raw);
+				for (int y = 0; y < HEIGHT; y++)
+					for (int x = 0; x < WIDTH; x++)
+						{
+							int i = (y * WIDTH) + x;
+							boolean inSquare = x < (WIDTH / 4) * 4 && y < (HEIGHT / 4) * 4;
+							assertEquals(before[i] & (inSquare ? ~1 : ~0), after[i] & (inSquare ? ~1 : ~0));
+						}
+
+				// Cleaning in place leaves nothing but the pixels with their lowest blue bit cleared, which is what goes back into the PNG file
+				codec.cleanInPlace(raw);
+				after = pixels(raw);
+				for (int y = 0; y < (HEIGHT / 4) * 4; y++)
+					for (int x = 0; x < (WIDTH / 4) * 4; x++)
+						assertEquals(before[(y * WIDTH) + x] & ~1, after[(y * WIDTH) + x]);
+
+				File png = new File(directory, (alpha ? "rgba" : "rgb") + "_out.png");
+				RawImage.toPng(raw, png, 9 * WIDTH * 4);
+				BufferedImage converted = ImageIO.read(png);
+				assertEquals(alpha, converted.getColorModel().hasAlpha());
+				assertArrayEquals(after, pixels(converted));
+
+				// A payload in place, which uses every pixel
+				byte[] payload = new byte[(int) codec.getPayloadCapacity(WIDTH, HEIGHT, alpha)];
+				new Random(3).nextBytes(payload);
+				codec.embedPayloadInPlace(raw, new ByteArrayInputStream(payload), alpha, false);
+				ByteArrayOutputStream out = new ByteArrayOutputStream();
+				codec.extractPayload(raw, out);
+				assertArrayEquals(payload, out.toByteArray());
+			}
+
+		@Test
+		void rgbRoundTrips() throws IOException
+			{
+				assertRoundTrips(false);
+			}
+
+		@Test
+		void rgbaRoundTrips() throws IOException
+			{
+				assertRoundTrips(true);
+			}
+
+		@Test
+		void rewritesTheSameAsAnImage() throws IOException
+			{
+				for (boolean alpha : new boolean[] { false, true })
+					{
+						BufferedImage image = image(alpha);
+						File file = toRaw(image, alpha ? "same_rgba" : "same_rgb");
+
+						char[] letters = ("x" + "written into both the same way".repeat(3) + "{").toCharArray();
+						Dictionary dictionary = DictionaryCache.get(new Network(1198662804, 0.07f, 3), null);
+						Carrier.of(image).rewrite(letters, 0, dictionary, new SplittableRandom(4), new SplittableRandom(5));
+						try (RawImage raw = RawImage.open(file, true))
+							{
+								Carrier.of(raw).rewrite(letters, 0, dictionary, new SplittableRandom(4), new SplittableRandom(5));
+							}
+
+						assertFalse(Arrays.equals(pixels(image(alpha)), pixels(image)));
+						assertArrayEquals(pixels(image), pixels(file));
+					}
+			}
+	}
@@ -0,0 +1,129 @@
+package encryption;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Checks that messages written by {@link StegoCodec} are read back the same by it and by the {@link MessageReader} that SWAP_MESSAGES, batch and scan
+ * modes read them with, in both layouts, and that images without a whole message read the same by both too.
+ */
+class StegoCodecTest
+	{
+		private static final int SEED = 1198662804, LEVELS = 3;
+		private static final float LEEWAY = 0.07f;
+
+		private static BufferedImage image(int width, int height)
+			{
+				BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+				for (int y = 0; y < height; y++)
+					for (int x = 0; x < width; x++)
+						image.setRGB(x, y, (x * 7) ^ (y * 131) ^ (x * y));
+				return image;
+			}
+
+		private static String readAsSwap(BufferedImage image)
+			{
+				MessageReader reader = new MessageReader(DictionaryCache.get(new Network(SEED, LEEWAY, LEVELS), null));
+				return reader.getMessage(reader.read(Carrier.of(image)));
+			}
+
+		private static void assertRoundTrips(boolean header, String message, String expected)
+			{
+				StegoCodec codec = new StegoCodec(SEED, LEEWAY, LEVELS, header);
+				BufferedImage image = image(128, 96);
+
+				assertEquals(expected.length(), codec.embed(image, message));
+				assertEquals(expected, codec.extract(image));
+				assertEquals(expected, readAsSwap(image));
+
+				// Either layout is read without being told which it is
+				assertEquals(expected, new StegoCodec(SEED, LEEWAY, LEVELS, !header).extract(image));
+			}
+
+		@Test
+		void terminatedRoundTrips()
+			{
+				assertRoundTrips(false, "meet me by the old oak tree at noon", "meet me by the old oak tree at noon");
+				assertRoundTrips(false, "a", "a");
+				assertRoundTrips(false, "Only lower case, and spaces!", "nly lower case and spaces");
+			}
+
+		@Test
+		void headerRoundTrips()
+			{
+				assertRoundTrips(true, "meet me by the old oak tree at noon", "meet me by the old oak tree at noon");
+				assertRoundTrips(true, "a", "a");
+				assertRoundTrips(true, "", "");
+			}
+
+		@Test
+		void emptyMessageWithoutHeaderIsRejected()
+			{
+				StegoCodec codec = new StegoCodec(SEED, LEEWAY, LEVELS, false);
+				assertThrows(IllegalArgumentException.class, () -> codec.embed(image(32, 32), "123"));
+			}
+
+		@Test
+		void tooLongIsCut()
+			{
+				StegoCodec codec = new StegoCodec(SEED, LEEWAY, LEVELS);
+				BufferedImage image = image(32, 32);
+				String message = "abcdefghijklmnopqrstuvwxyz ".repeat(3);
+
+				int hidden = codec.embed(image, message);
+				assertEquals(codec.getCapacity(32, 32), hidden);
+				assertTrue(hidden < message.length());
+				assertEquals(message.substring(0, hidden), codec.extract(image));
+				assertEquals(message.substring(0, hidden), readAsSwap(image));
+			}
+
+		@Test
+		void unterminatedReadsTheSame()
+			{
+				// Every square an 'a', so there is no terminating character anywhere
+				BufferedImage image = image(32, 32);
+				Carrier carrier = Carrier.of(image);
+				char[] letters = new char[carrier.blocksWide * carrier.blocksHigh];
+				Arrays.fill(letters, 'a');
+				carrier.rewrite(letters, 0, DictionaryCache.get(new Network(SEED, LEEWAY, LEVELS), null), new SplittableRandom(1), new SplittableRandom(2));
+
+				String expected = "a".repeat(letters.length - 1);
+				assertEquals(expected, new StegoCodec(SEED, LEEWAY, LEVELS).extract(image));
+				assertEquals(expected, readAsSwap(image));
+			}
+
+		@Test
+		void noMessageReadsTheSame()
+			{
+				// An image that never had a message written to it, whatever it reads as
+				for (int size = 8; size <= 256; size *= 2)
+					{
+						BufferedImage image = image(size, size);
+						assertEquals(new StegoCodec(SEED, LEEWAY, LEVELS).extract(image), readAsSwap(image), "size " + size);
+					}
+			}
+
+		@Test
+		void savesItsDictionaryOnlyWhereItIsTold(@TempDir File cache)
+			{
+				// A network no other test uses, so its dictionary isn't already in memory
+				String name = "dictionary_424242_" + Integer.toHexString(Float.floatToIntBits(0.1f)) + "_1.bin";
+
+				new StegoCodec(424242, 0.1f, 1);
+				if (DictionaryCache.DIRECTORY != null)
+					assertFalse(new File(DictionaryCache.DIRECTORY, name).exists());
+
+				new StegoCodec(424243, 0.1f, 1, false, cache);
+				assertTrue(new File(cache, name.replace("424242", "424243")).isFile());
+			}
+	}
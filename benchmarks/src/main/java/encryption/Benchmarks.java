@@ -0,0 +1,26 @@
+package encryption;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Runs the JMH benchmarks, saving the results as JSON so that they can be compared between releases.
+ * <p>
+ * Takes the same arguments as JMH itself (-h lists them), for example <code>java -jar benchmarks/target/benchmarks.jar Network -p levels=3</code>. The
+ * results are written to benchmarks.json unless another result format or file is given with -rf or -rff.
+ */
+public class Benchmarks
+	{
+		public static void main(String[] args) throws Exception
+			{
+				List<String> jmhArgs = new ArrayList<String>(Arrays.asList(args));
+
+				if (!jmhArgs.contains("-rf"))
+					jmhArgs.addAll(Arrays.asList("-rf", "json"));
+				if (!jmhArgs.contains("-rff"))
+					jmhArgs.addAll(Arrays.asList("-rff", "benchmarks.json"));
+
+				org.openjdk.jmh.Main.main(jmhArgs.toArray(new String[jmhArgs.size()]));
+			}
+	}
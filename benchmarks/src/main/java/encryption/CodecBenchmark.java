@@ -0,0 +1,120 @@
+package encryption;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * How long it takes to embed, extract and clean a message in an image that is already in memory, for images of a few sizes.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(value = 1, jvmArgsAppend = { "--add-modules", "jdk.incubator.vector", "-Xmx2g" })
+public class CodecBenchmark
+	{
+		/**
+		 * The size of the image in millions of pixels.
+		 */
+		@Param({ "1", "12", "48" })
+		int megapixels;
+
+		@Param({ "3" })
+		int levels;
+
+		@Param({ "0.07" })
+		float leeway;
+
+		/**
+		 * Only the name of the file is used, it is never read or written.
+		 */
+		private static final File IMAGE_FILE = new File("the quick brown fox jumps over the lazy dog.png");
+
+		private Dictionary dictionary;
+		private SwapCodec codec;
+		private Carrier carrier;
+
+		@Setup
+		public void buildImage() throws IOException
+			{
+				dictionary = new Dictionary(new Network(1198662804, leeway, levels));
+				codec = new SwapCodec(dictionary, new Random(1));
+				carrier = Carrier.of(createImage(megapixels));
+				codec.encodeMessage(carrier, IMAGE_FILE);
+			}
+
+		/**
+		 * A 4:3 image of random pixels, stored as 8 bit BGR like a decoded JPEG or PNG.
+		 */
+		static BufferedImage createImage(int megapixels)
+			{
+				int width = (int) Math.sqrt(megapixels * 1000000 * 4 / 3.0);
+				int height = megapixels * 1000000 / width;
+
+				BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_3BYTE_BGR);
+				Random r = new Random(megapixels);
+				int[] row = new int[width];
+				for (int y = 0; y < height; y++)
+					{
+						for (int x = 0; x < width; x++)
+							row[x] = r.nextInt();
+						image.setRGB(0, y, width, 1, row, 0, width);
+					}
+
+				return image;
+			}
+
+		/**
+		 * Writes the message and fills every other 4*4 square with random data, in a single pass over the image.
+		 */
+		@Benchmark
+		public Carrier embed() throws IOException
+			{
+				codec.encodeMessage(carrier, IMAGE_FILE);
+				return carrier;
+			}
+
+		/**
+		 * Reads the message back out, stopping at the terminating character as a swap does.
+		 */
+		@Benchmark
+		public String extract()
+			{
+				return codec.getCurrentlyEncryptedMessage(carrier);
+			}
+
+		/**
+		 * Reads the character held by every 4*4 square, as a swap has to for an image that doesn't hold a message.
+		 */
+		@Benchmark
+		public void extractAll(Blackhole blackhole)
+			{
+				for (int y = 0; y < carrier.blocksHigh; y++)
+					for (int x = 0; x < carrier.blocksWide; x++)
+						blackhole.consume(dictionary.getLetter(carrier.readBlock(x, y)));
+			}
+
+		@Benchmark
+		public Carrier clean()
+			{
+				carrier.clean();
+				return carrier;
+			}
+	}
@@ -0,0 +1,147 @@
+package encryption;
+
+import java.io.ByteArrayOutputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Sends embed and extract requests to the HTTP service ({@link Server}) from several clients at once and reports the latency and throughput.
+ * <p>
+ * Each client sends its next request as soon as the last one is answered. By default a server is started in this JVM on a free port, give -Durl to test a
+ * server that is already running instead:
+ * <ul>
+ * <li>-Durl=<i>http://localhost:8080</i> - the server to test</li>
+ * <li>-Dclients=<i>an integer</i> - the number of requests sent at once (16)</li>
+ * <li>-Drequests=<i>an integer</i> - the number of requests each client sends, after a warm up of the same length (50)</li>
+ * <li>-Dmegapixels=<i>an integer</i> - the size of the image sent (1)</li>
+ * <li>-Dendpoint=<i>embed or extract</i> - which requests are sent (embed)</li>
+ * <li>-Dmaxrequests=<i>an integer</i> - the admission limit of the server started in this JVM (the number of processors)</li>
+ * </ul>
+ * For example <code>java -Dclients=32 -cp benchmarks/target/benchmarks.jar encryption.LoadTest</code>.
+ */
+public class LoadTest
+	{
+		public static void main(String[] args) throws Exception
+			{
+				String url = System.getProperty("url");
+				int clients = Integer.parseInt(System.getProperty("clients", "16"));
+				int requests = Integer.parseInt(System.getProperty("requests", "50"));
+				int megapixels = Integer.parseInt(System.getProperty("megapixels", "1"));
+				String endpoint = System.getProperty("endpoint", "embed");
+				int maxRequests = Integer.parseInt(System.getProperty("maxrequests", "" + Runtime.getRuntime().availableProcessors()));
+
+				Server server = null;
+				if (url == null)
+					{
+						server = new Server(new StegoCodec(1198662804, 0.07f, 3), 0, maxRequests, 64 * 1024 * 1024, 64L * 1000 * 1000);
+						server.start();
+						url = "http://localhost:" + server.getPort();
+					}
+
+				HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+
+				ByteArrayOutputStream png = new ByteArrayOutputStream();
+				ImageIO.write(CodecBenchmark.createImage(megapixels), "png", png);
+				byte[] image = png.toByteArray();
+
+				// Extract from an image that holds a message, as it would in real use
+				if (endpoint.equals("extract"))
+					image = client.send(request(url + "/embed?message=a%20load%20test", image), HttpResponse.BodyHandlers.ofByteArray()).body();
+
+				HttpRequest request = endpoint.equals("extract") ? request(url + "/extract", image) : request(url + "/embed?message=a%20load%20test", image);
+
+				System.out.println(clients + " clients sending " + requests + " " + endpoint + " requests each of a " + image.length + " byte image to " + url);
+
+				run(client, request, clients, requests);
+				Result result = run(client, request, clients, requests);
+
+				// Rejections are reported separately, as they are answered without any work being done
+				long[] latencies = Arrays.copyOf(result.latencies, result.ok.get());
+				long[] rejectedLatencies = Arrays.copyOf(result.rejectedLatencies, result.rejected.get());
+				Arrays.sort(latencies);
+				Arrays.sort(rejectedLatencies);
+				System.out.println("Requests:   " + (clients * requests) + " (" + result.ok.get() + " ok, " + result.rejected.get() + " rejected, "
+						+ result.failed.get() + " failed)");
+				System.out.println("Throughput: " + String.format("%.1f", latencies.length / (result.nanos / 1e9)) + " ok requests/s");
+				if (latencies.length > 0)
+					System.out.println("Latency:    p50 " + millis(latencies, 0.5) + " ms, p99 " + millis(latencies, 0.99) + " ms, max " + millis(latencies, 1)
+							+ " ms");
+				if (rejectedLatencies.length > 0)
+					System.out.println("Rejected:   p50 " + millis(rejectedLatencies, 0.5) + " ms, p99 " + millis(rejectedLatencies, 0.99) + " ms");
+
+				if (server != null)
+					server.stop();
+			}
+
+		private static HttpRequest request(String url, byte[] image)
+			{
+				return HttpRequest.newBuilder(URI.create(url)).POST(HttpRequest.BodyPublishers.ofByteArray(image)).build();
+			}
+
+		private static String millis(long[] sortedLatencies, double percentile)
+			{
+				int index = (int) Math.ceil(percentile * sortedLatencies.length) - 1;
+				return String.format("%.1f", sortedLatencies[Math.max(0, index)] / 1e6);
+			}
+
+		private static class Result
+			{
+				/**
+				 * The latency of each request that was answered with a 200, in the order they were answered.
+				 */
+				private long[] latencies;
+
+				/**
+				 * The latency of each request that was answered with a 503.
+				 */
+				private long[] rejectedLatencies;
+				private long nanos;
+				private final AtomicInteger ok = new AtomicInteger(), rejected = new AtomicInteger(), failed = new AtomicInteger();
+			}
+
+		private static Result run(HttpClient client, HttpRequest request, int clients, int requests) throws InterruptedException
+			{
+				final Result result = new Result();
+				result.latencies = new long[clients * requests];
+				result.rejectedLatencies = new long[clients * requests];
+				final CountDownLatch finished = new CountDownLatch(clients);
+
+				long start = System.nanoTime();
+				for (int c = 0; c < clients; c++)
+					{
+						new Thread(() ->
+							{
+								for (int i = 0; i < requests; i++)
+									{
+										long sent = System.nanoTime();
+										try
+											{
+												int status = client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+												if (status == 200)
+													result.latencies[result.ok.getAndIncrement()] = System.nanoTime() - sent;
+												else if (status == 503)
+													result.rejectedLatencies[result.rejected.getAndIncrement()] = System.nanoTime() - sent;
+												else
+													result.failed.incrementAndGet();
+											}
+										catch (Exception e)
+											{
+												result.failed.incrementAndGet();
+											}
+									}
+								finished.countDown();
+							}).start();
+					}
+
+				finished.await();
+				result.nanos = System.nanoTime() - start;
+				return result;
+			}
+	}
@@ -0,0 +1,60 @@
+package encryption;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * How long the {@link Network} takes to turn startingNodeStates into characters, one at a time and for all 2^16 of them (the sweep behind the stats,
+ * dictionary and optimise modes).
+ * <p>
+ * The sweep uses the Vector API when the JVM has the jdk.incubator.vector module, run with <code>-jvmArgsAppend -Dvector=false</code> to time the scalar
+ * network instead.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = { "--add-modules", "jdk.incubator.vector" })
+public class NetworkBenchmark
+	{
+		@Param({ "2", "3", "4" })
+		int levels;
+
+		@Param({ "0.07", "0.2" })
+		float leeway;
+
+		private Network network;
+		private int pattern = 0;
+
+		@Setup
+		public void buildNetwork()
+			{
+				network = new Network(1198662804, leeway, levels);
+			}
+
+		@Benchmark
+		@OutputTimeUnit(TimeUnit.NANOSECONDS)
+		public char getLetter()
+			{
+				pattern = (pattern + 1) & 0xFFFF;
+				return network.getLetter(pattern);
+			}
+
+		@Benchmark
+		@OutputTimeUnit(TimeUnit.MILLISECONDS)
+		public int[] getCharFrequencies()
+			{
+				return network.getCharFrequencies();
+			}
+	}
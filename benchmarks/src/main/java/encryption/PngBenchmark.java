@@ -0,0 +1,109 @@
+package encryption;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import javax.imageio.ImageIO;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * How long it takes to read and write a PNG file, through {@link ImageIO} as small images are swapped and a band at a time as large images are swapped.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(value = 1, jvmArgsAppend = { "--add-modules", "jdk.incubator.vector", "-Xmx2g" })
+public class PngBenchmark
+	{
+		@Param({ "1", "12", "48" })
+		int megapixels;
+
+		/**
+		 * The number of rows read or written at once by the banded benchmarks.
+		 */
+		@Param({ "256" })
+		int bandRows;
+
+		/**
+		 * The Deflate level and number of threads the banded writer compresses with.
+		 */
+		@Param({ "1", "4" })
+		int level;
+
+		@Param({ "1", "4" })
+		int threads;
+
+		private BufferedImage image;
+		private File readFile, writeFile;
+
+		@Setup
+		public void writeImage() throws IOException
+			{
+				image = CodecBenchmark.createImage(megapixels);
+
+				readFile = File.createTempFile("benchmark", ".png");
+				writeFile = File.createTempFile("benchmark", ".png");
+				ImageIO.write(image, "png", readFile);
+			}
+
+		@TearDown
+		public void deleteImages()
+			{
+				readFile.delete();
+				writeFile.delete();
+			}
+
+		@Benchmark
+		public BufferedImage readImageIO() throws IOException
+			{
+				return ImageIO.read(readFile);
+			}
+
+		@Benchmark
+		public int readBands() throws IOException
+			{
+				int rows = 0;
+				try (ImageBands bands = ImageBands.open(readFile))
+					{
+						while (bands.nextRow < bands.height)
+							rows += bands.read(bandRows).getHeight();
+					}
+
+				return rows;
+			}
+
+		@Benchmark
+		public File writeImageIO() throws IOException
+			{
+				ImageIO.write(image, "png", writeFile);
+				return writeFile;
+			}
+
+		@Benchmark
+		public File writeBands() throws IOException
+			{
+				try (PngBandWriter out = new PngBandWriter(writeFile, image.getWidth(), image.getHeight(), level, PngBandWriter.Filter.ADAPTIVE, threads))
+					{
+						for (int y = 0; y < image.getHeight(); y += bandRows)
+							out.write(image.getSubimage(0, y, image.getWidth(), Math.min(bandRows, image.getHeight() - y)));
+					}
+
+				return writeFile;
+			}
+	}
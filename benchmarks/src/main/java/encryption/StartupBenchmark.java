@@ -0,0 +1,107 @@
+package encryption;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import javax.imageio.ImageIO;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * How long a short command line invocation takes from starting the JVM to exiting, with and without the AppCDS archive the build makes next to
+ * encrypt.jar. Each invocation is a new JVM, so this has to be run from the directory holding Encryption/target/encrypt.jar (or given its path with
+ * -Dencrypt.jar) after mvn package.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 20)
+@Fork(1)
+public class StartupBenchmark
+	{
+		/**
+		 * stats sweeps a one level network and prints its statistics, embed hides a message in a 64*64 PNG.
+		 */
+		@Param({ "stats", "embed" })
+		String mode;
+
+		@Param({ "none", "appcds" })
+		String archive;
+
+		/**
+		 * Whether the Vector API is added, which the archive was made with.
+		 */
+		@Param({ "false", "true" })
+		boolean vector;
+
+		private File directory;
+		private List<String> command;
+
+		@Setup
+		public void prepare() throws IOException
+			{
+				File jar = new File(System.getProperty("encrypt.jar", "Encryption/target/encrypt.jar")).getAbsoluteFile();
+				File jsa = new File(jar.getParentFile(), "encrypt.jsa");
+				if (!jar.isFile() || (archive.equals("appcds") && !jsa.isFile()))
+					throw new IOException("Build " + jar + " and " + jsa + " with mvn package first");
+
+				directory = Files.createTempDirectory("startup").toFile();
+
+				File image = new File(directory, "image.png");
+				ImageIO.write(new BufferedImage(64, 64, BufferedImage.TYPE_3BYTE_BGR), "png", image);
+
+				command = new ArrayList<String>(Arrays.asList(System.getProperty("java.home") + "/bin/java", "-Dcache=" + new File(directory, "cache")));
+				if (vector)
+					command.addAll(Arrays.asList("--add-modules", "jdk.incubator.vector"));
+				if (archive.equals("appcds"))
+					command.add("-XX:SharedArchiveFile=" + jsa);
+
+				if (mode.equals("stats"))
+					command.addAll(Arrays.asList("-Dmode=stats", "-Dlevels=1"));
+				else
+					command.addAll(Arrays.asList("-Dmode=embed", "-Dimage=" + image, "-Dmessage=hello", "-Dout=" + new File(directory, "hidden.png")));
+
+				command.addAll(Arrays.asList("-jar", jar.getPath()));
+			}
+
+		@TearDown
+		public void delete() throws IOException
+			{
+				try (Stream<Path> files = Files.walk(directory.toPath()))
+					{
+						files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+					}
+			}
+
+		@Benchmark
+		public int run() throws IOException, InterruptedException
+			{
+				Process process = new ProcessBuilder(command).redirectOutput(ProcessBuilder.Redirect.DISCARD).redirectError(ProcessBuilder.Redirect.DISCARD).start();
+				int exitCode = process.waitFor();
+				if (exitCode != 0)
+					throw new IOException(String.join(" ", command) + " exited with " + exitCode);
+
+				return exitCode;
+			}
+	}